@@ -0,0 +1,50 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of extracting a blob depending on where it sits in its cluster. For compressed clusters,
+ * everything in front of the blob has to be decoded, so later blobs are more expensive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlobExtractionBenchmark {
+
+    @Param({"first", "middle", "last"})
+    public String blobPosition;
+
+    private String[] titles;
+    private int next;
+
+    @Setup
+    public void setUp(ZimReaderState state) {
+        switch (blobPosition) {
+            case "first":
+                titles = state.firstBlobTitles;
+                break;
+            case "middle":
+                titles = state.middleBlobTitles;
+                break;
+            default:
+                titles = state.lastBlobTitles;
+                break;
+        }
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream extractBlob(ZimReaderState state) throws IOException {
+        return state.reader.getDataForTitle(Samples.pick(titles, next++));
+    }
+}
@@ -0,0 +1,71 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tukaani.xz.check.CRC32;
+import org.tukaani.xz.check.CRC64;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the XZ integrity checks, comparing the slicing-by-8 CRC64 against the original
+ * byte-at-a-time implementation. CRC32 (backed by java.util.zip) is included for reference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CRC64Benchmark {
+    private static final long POLY = 0xC96C5795D7870F42L;
+    private static final long[] BYTEWISE_TABLE = new long[256];
+
+    static {
+        for (int b = 0; b < BYTEWISE_TABLE.length; ++b) {
+            long r = b;
+            for (int i = 0; i < 8; ++i) {
+                r = (r & 1) == 1 ? (r >>> 1) ^ POLY : r >>> 1;
+            }
+            BYTEWISE_TABLE[b] = r;
+        }
+    }
+
+    @Param({"65536", "1048576"})
+    public int size;
+
+    private byte[] data;
+    private final CRC64 crc64 = new CRC64();
+    private final CRC32 crc32 = new CRC32();
+
+    @Setup
+    public void setUp() {
+        data = new byte[size];
+        new Random(0).nextBytes(data);
+    }
+
+    @Benchmark
+    public byte[] crc64SlicingBy8() {
+        crc64.update(data, 0, data.length);
+        return crc64.finish();
+    }
+
+    @Benchmark
+    public long crc64Bytewise() {
+        long crc = -1;
+        for (byte b : data) {
+            crc = BYTEWISE_TABLE[(b ^ (int) crc) & 0xFF] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+
+    @Benchmark
+    public byte[] crc32() {
+        crc32.update(data, 0, data.length);
+        return crc32.finish();
+    }
+}
@@ -0,0 +1,52 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+import com.dmitrybrant.zimdroid.DirectoryEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of directory operations that don't decode any cluster data: URL and title lookups,
+ * redirect resolution, prefix search and random titles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark {
+    private static final int SEARCH_RESULTS = 10;
+
+    private int next;
+
+    @Benchmark
+    public DirectoryEntry urlLookup(ZimReaderState state) throws IOException {
+        return state.reader.getEntryForUrl(Samples.pick(state.urls, next++));
+    }
+
+    @Benchmark
+    public DirectoryEntry titleLookup(ZimReaderState state) throws IOException {
+        return state.reader.getEntryForTitle(Samples.pick(state.titles, next++));
+    }
+
+    @Benchmark
+    public String redirectResolution(ZimReaderState state) throws IOException {
+        return state.reader.getNormalizedTitle(Samples.pick(state.redirectTitles, next++));
+    }
+
+    @Benchmark
+    public List<String> searchByPrefix(ZimReaderState state) throws IOException {
+        return state.reader.searchByPrefix(Samples.pick(state.prefixes, next++), SEARCH_RESULTS);
+    }
+
+    @Benchmark
+    public String randomTitle(ZimReaderState state) throws IOException {
+        return state.reader.getRandomTitle();
+    }
+}
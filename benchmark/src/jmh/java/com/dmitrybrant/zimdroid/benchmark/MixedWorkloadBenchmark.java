@@ -0,0 +1,42 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several threads sharing one reader, roughly mimicking a browser loading pages: mostly URL
+ * lookups and content extraction, with the occasional search or redirect.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MixedWorkloadBenchmark {
+    private static final int SEARCH_RESULTS = 10;
+
+    @Benchmark
+    @Threads(4)
+    public Object mixedWorkload(ZimReaderState state) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(Integer.MAX_VALUE);
+        int operation = random.nextInt(100);
+        if (operation < 40) {
+            return state.reader.getEntryForUrl(Samples.pick(state.urls, index));
+        } else if (operation < 80) {
+            return state.reader.getDataForUrl(Samples.pick(state.urls, index));
+        } else if (operation < 90) {
+            return state.reader.searchByPrefix(Samples.pick(state.prefixes, index), SEARCH_RESULTS);
+        } else if (state.redirectTitles.length > 0) {
+            return state.reader.getNormalizedTitle(Samples.pick(state.redirectTitles, index));
+        }
+        return state.reader.getNormalizedTitle(Samples.pick(state.titles, index));
+    }
+}
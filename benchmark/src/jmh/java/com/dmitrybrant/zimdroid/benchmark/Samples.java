@@ -0,0 +1,18 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+final class Samples {
+
+    /**
+     * Cycle through the given samples. Small archives may have no samples of some kind (e.g. no
+     * redirects), in which case the benchmark using them fails with a clear message.
+     */
+    static String pick(String[] samples, int index) {
+        if (samples.length == 0) {
+            throw new IllegalStateException("The archive has no entries of this kind.");
+        }
+        return samples[(index & Integer.MAX_VALUE) % samples.length];
+    }
+
+    private Samples() {
+    }
+}
@@ -0,0 +1,154 @@
+package com.dmitrybrant.zimdroid.benchmark;
+
+import com.dmitrybrant.zimdroid.ArticleEntry;
+import com.dmitrybrant.zimdroid.DirectoryEntry;
+import com.dmitrybrant.zimdroid.RedirectEntry;
+import com.dmitrybrant.zimdroid.ZimCache;
+import com.dmitrybrant.zimdroid.ZimFile;
+import com.dmitrybrant.zimdroid.ZimGenerator;
+import com.dmitrybrant.zimdroid.ZimReader;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A ZimReader shared by all benchmark threads, together with samples of titles, URLs and
+ * redirects drawn from the archive, so that lookups hit real entries.
+ */
+@State(Scope.Benchmark)
+public class ZimReaderState {
+    private static final int MAX_SAMPLES = 4096;
+
+    /**
+     * Path of the archive to benchmark against, relative to the benchmark module. If empty, a
+     * synthetic archive is generated according to entryCount and compression.
+     */
+    @Param({""})
+    public String zimPath;
+
+    /** Number of entries in the generated archive. */
+    @Param({"100000"})
+    public int entryCount;
+
+    /** Compression of the generated archive, either "lzma" or "none". */
+    @Param({"lzma", "none"})
+    public String compression;
+
+    /**
+     * Budget of the reader's cache, in bytes. Directory entries take a few hundred bytes each,
+     * and decoded clusters are cached as well if they fit.
+     */
+    @Param({"16384", "131072", "4194304"})
+    public long cacheSize;
+
+    public ZimReader reader;
+    public String[] titles;
+    public String[] urls;
+    public String[] prefixes;
+    public String[] redirectTitles;
+    public String[] firstBlobTitles;
+    public String[] middleBlobTitles;
+    public String[] lastBlobTitles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        reader = new ZimReader(new ZimFile(zimPath.isEmpty() ? getGeneratedFile().getPath() : zimPath),
+                new ZimCache(cacheSize));
+
+        List<String> titleList = new ArrayList<>();
+        List<String> urlList = new ArrayList<>();
+        List<String> prefixList = new ArrayList<>();
+        List<String> redirectList = new ArrayList<>();
+        // cluster number -> (blob number -> title)
+        Map<Integer, TreeMap<Integer, String>> clusters = new TreeMap<>();
+
+        for (String title : reader.searchByPrefix("", Integer.MAX_VALUE)) {
+            DirectoryEntry entry = reader.getEntryForTitle(title);
+            if (entry == null) {
+                // Titles past the article namespace.
+                continue;
+            }
+            if (entry instanceof RedirectEntry) {
+                redirectList.add(title);
+                continue;
+            }
+            titleList.add(title);
+            urlList.add(entry.getNamespace() + "/" + entry.getUrl());
+            if (title.length() >= 2) {
+                prefixList.add(title.substring(0, 2));
+            }
+            ArticleEntry article = (ArticleEntry) entry;
+            TreeMap<Integer, String> blobs = clusters.get(article.getClusterNumber());
+            if (blobs == null) {
+                blobs = new TreeMap<>();
+                clusters.put(article.getClusterNumber(), blobs);
+            }
+            blobs.put(article.getBlobNumber(), title);
+        }
+
+        List<String> first = new ArrayList<>();
+        List<String> middle = new ArrayList<>();
+        List<String> last = new ArrayList<>();
+        for (TreeMap<Integer, String> blobs : clusters.values()) {
+            if (blobs.size() < 3) {
+                continue;
+            }
+            first.add(blobs.firstEntry().getValue());
+            middle.add(blobs.ceilingEntry(blobs.lastKey() / 2).getValue());
+            last.add(blobs.lastEntry().getValue());
+        }
+
+        titles = sample(titleList);
+        urls = sample(urlList);
+        prefixes = sample(prefixList);
+        redirectTitles = sample(redirectList);
+        firstBlobTitles = sample(first);
+        middleBlobTitles = sample(middle);
+        lastBlobTitles = sample(last);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Generate the synthetic archive, or reuse it from a previous run: generation is
+     * deterministic, so the file only depends on the parameters.
+     */
+    private File getGeneratedFile() throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "zimdroid-benchmark-" + entryCount + "-" + compression + ".zim");
+        if (!file.exists()) {
+            ZimGenerator generator = new ZimGenerator();
+            generator.setEntryCount(entryCount);
+            generator.setCompressed(!"none".equals(compression));
+            File tempFile = new File(file.getPath() + ".tmp");
+            generator.generate(tempFile);
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+        }
+        return file;
+    }
+
+    private static String[] sample(List<String> list) {
+        int step = Math.max(1, list.size() / MAX_SAMPLES);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += step) {
+            result.add(list.get(i));
+        }
+        return result.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,107 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered stream over a region of a file channel, starting at a given position. It uses
+ * positional reads only, so any number of these can read the same channel concurrently.
+ */
+final class ChannelInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ZimMetrics metrics;
+    private long position;
+
+    ChannelInputStream(FileChannel channel, long position) {
+        this(channel, position, BUFFER_SIZE, ZimMetrics.NONE);
+    }
+
+    /**
+     * @param metrics Receives the number of bytes read from the file.
+     */
+    ChannelInputStream(FileChannel channel, long position, ZimMetrics metrics) {
+        this(channel, position, BUFFER_SIZE, metrics);
+    }
+
+    ChannelInputStream(FileChannel channel, long position, int bufferSize) {
+        this(channel, position, bufferSize, ZimMetrics.NONE);
+    }
+
+    private ChannelInputStream(FileChannel channel, long position, int bufferSize, ZimMetrics metrics) {
+        this.channel = channel;
+        this.metrics = metrics;
+        this.position = position;
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            if (len >= buffer.capacity()) {
+                // Large reads go straight into the caller's array.
+                int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (n > 0) {
+                    position += n;
+                    metrics.onFileRead(n);
+                }
+                return n;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (n <= buffer.remaining()) {
+            buffer.position(buffer.position() + (int) n);
+            return n;
+        }
+        long skipped = Math.min(n - buffer.remaining(), Math.max(0, channel.size() - position));
+        position += skipped;
+        skipped += buffer.remaining();
+        buffer.limit(0);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer, position);
+        buffer.flip();
+        if (n <= 0) {
+            return false;
+        }
+        position += n;
+        metrics.onFileRead(n);
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes whole clusters, for reading every blob of a cluster at once, or streams single blobs
+ * out of a cluster. This is the counterpart of {@link ClusterEncoder}.
+ */
+final class ClusterDecoder {
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+    private static final int ALLOCATION_STEP = 1024 * 1024;
+
+    /**
+     * Read the cluster at the current position of the given stream.
+     * @param verifyChecks Whether to verify the integrity checks of a compressed cluster. If so,
+     *                     the compressed stream is read to its end, so that its checks and index
+     *                     are validated.
+     * @param maxSize Number of bytes of the file from the start of the cluster on, which bounds
+     *                the size of an uncompressed cluster.
+     * @return The blobs of the cluster, in order.
+     */
+    static byte[][] decode(InputStream in, boolean verifyChecks, long maxSize) throws IOException {
+        InputStream data = openData(in, verifyChecks);
+        // The decoded size of a compressed cluster isn't known up front, but memory is still only
+        // allocated as the data arrives.
+        long maxDataSize = data != in ? Integer.MAX_VALUE : maxSize - 1;
+        DataInputStream dataIn = new DataInputStream(data);
+        byte[] buffer = new byte[ZimReader.BYTES_PER_INT];
+        dataIn.readFully(buffer);
+        int firstOffset = Util.getIntLe(buffer);
+        int offsetCount = firstOffset / ZimReader.BYTES_PER_INT;
+        if (offsetCount < 1 || firstOffset > maxDataSize) {
+            throw new IOException("Invalid cluster offset table.");
+        }
+
+        int[] offsets = new int[Math.min(offsetCount, ALLOCATION_STEP / ZimReader.BYTES_PER_INT)];
+        offsets[0] = firstOffset;
+        for (int i = 1; i < offsetCount; i++) {
+            dataIn.readFully(buffer);
+            if (i == offsets.length) {
+                offsets = Arrays.copyOf(offsets, (int) Math.min(offsetCount, 2L * offsets.length));
+            }
+            offsets[i] = Util.getIntLe(buffer);
+            if (offsets[i] < offsets[i - 1] || offsets[i] > maxDataSize) {
+                throw new IOException("Invalid cluster offset table.");
+            }
+        }
+
+        byte[][] blobs = new byte[offsetCount - 1][];
+        for (int i = 0; i < blobs.length; i++) {
+            blobs[i] = readFully(dataIn, offsets[i + 1] - offsets[i]);
+        }
+
+        if (verifyChecks && data != in) {
+            byte[] drain = new byte[DRAIN_BUFFER_SIZE];
+            while (data.read(drain) >= 0) {
+                // Reach the end of the XZ stream.
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Read the given number of bytes, allocating memory as the data arrives, so that a length
+     * from a corrupt cluster runs out of data rather than out of memory.
+     */
+    private static byte[] readFully(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, ALLOCATION_STEP)];
+        int pos = 0;
+        while (true) {
+            in.readFully(bytes, pos, bytes.length - pos);
+            pos = bytes.length;
+            if (pos == length) {
+                return bytes;
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * pos));
+        }
+    }
+
+    /**
+     * Open a stream over one blob of the cluster at the current position of the given stream.
+     * The blob is decoded as it is read, and only as far as it is read.
+     * @param metrics Receives the number of bytes skipped to get to the blob.
+     */
+    static InputStream openBlob(InputStream in, int blobNumber, boolean verifyChecks, ZimMetrics metrics) throws IOException {
+        InputStream data = openData(in, verifyChecks);
+        DataInputStream dataIn = new DataInputStream(data);
+        byte[] buffer = new byte[ZimReader.BYTES_PER_INT];
+        dataIn.readFully(buffer);
+        int firstOffset = Util.getIntLe(buffer);
+        if (blobNumber < 0 || blobNumber >= firstOffset / ZimReader.BYTES_PER_INT - 1) {
+            throw new IOException("Blob number greater than total blobs.");
+        }
+        int offset1 = firstOffset;
+        if (blobNumber > 0) {
+            Util.skipFully(dataIn, (long) ZimReader.BYTES_PER_INT * (blobNumber - 1));
+            dataIn.readFully(buffer);
+            offset1 = Util.getIntLe(buffer);
+        }
+        dataIn.readFully(buffer);
+        int offset2 = Util.getIntLe(buffer);
+        if (offset2 < offset1) {
+            throw new IOException("Invalid cluster offset table.");
+        }
+        // Skip the rest of the offset table and the blobs before this one.
+        long skip = offset1 - (long) ZimReader.BYTES_PER_INT * (blobNumber + 2);
+        Util.skipFully(dataIn, skip);
+        metrics.onBlobSkip(skip + (long) ZimReader.BYTES_PER_INT * Math.max(0, blobNumber - 1));
+        return new BlobInputStream(data, offset2 - offset1);
+    }
+
+    /**
+     * Read the compression type of a cluster, and return a stream of its uncompressed data.
+     */
+    private static InputStream openData(InputStream in, boolean verifyChecks) throws IOException {
+        int compressionType = in.read();
+        switch (compressionType) {
+            case ZimReader.COMPRESSION_TYPE_NONE:
+            case ZimReader.COMPRESSION_TYPE_NONE_OLD:
+                return in;
+            case ZimReader.COMPRESSION_TYPE_LZMA:
+                return new SingleXZInputStream(in, -1, verifyChecks);
+            default:
+                throw new IOException("Unsupported cluster compression type: " + compressionType);
+        }
+    }
+
+    /**
+     * Reads exactly the given number of bytes from the cluster data, and treats running out of
+     * data before that as an error.
+     */
+    private static final class BlobInputStream extends FilterInputStream {
+        private long remaining;
+
+        BlobInputStream(InputStream in, long length) {
+            super(in);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Failed to read from stream.");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new IOException("Failed to read from stream.");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private ClusterDecoder() {
+    }
+}
@@ -0,0 +1,72 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encodes a list of blobs into a ZIM cluster: the compression type byte, followed by the
+ * (optionally LZMA-compressed) blob offset table and blob data, in the layout that
+ * {@link ZimReader} expects.
+ */
+final class ClusterEncoder {
+
+    static byte[] encode(List<byte[]> blobs, LZMA2Options lzmaOptions) throws IOException {
+        int dataSize = ZimReader.BYTES_PER_INT * (blobs.size() + 1);
+        for (byte[] blob : blobs) {
+            dataSize += blob.length;
+        }
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream(lzmaOptions == null ? dataSize + 1 : dataSize / 2);
+        if (lzmaOptions == null) {
+            outStream.write(ZimReader.COMPRESSION_TYPE_NONE_OLD);
+            writeBlobs(outStream, blobs);
+        } else {
+            outStream.write(ZimReader.COMPRESSION_TYPE_LZMA);
+            XZOutputStream xzStream = new XZOutputStream(outStream, getOptionsForSize(lzmaOptions, dataSize));
+            writeBlobs(xzStream, blobs);
+            xzStream.finish();
+        }
+        return outStream.toByteArray();
+    }
+
+    /**
+     * A dictionary bigger than the cluster itself only costs memory, both when compressing and
+     * when a reader decompresses the cluster, so shrink it to fit.
+     */
+    private static LZMA2Options getOptionsForSize(LZMA2Options options, int dataSize)
+            throws UnsupportedOptionsException {
+        if (options.getDictSize() <= dataSize) {
+            return options;
+        }
+        LZMA2Options sizedOptions = (LZMA2Options) options.clone();
+        sizedOptions.setDictSize(Math.max(LZMA2Options.DICT_SIZE_MIN, dataSize));
+        return sizedOptions;
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    private static void writeBlobs(OutputStream out, List<byte[]> blobs) throws IOException {
+        byte[] offsets = new byte[ZimReader.BYTES_PER_INT * (blobs.size() + 1)];
+        int offset = offsets.length;
+        for (int i = 0; i <= blobs.size(); i++) {
+            for (int j = 0; j < ZimReader.BYTES_PER_INT; j++) {
+                offsets[i * ZimReader.BYTES_PER_INT + j] = (byte) (offset >>> (j * 8));
+            }
+            if (i < blobs.size()) {
+                offset += blobs.get(i).length;
+            }
+        }
+        out.write(offsets);
+        for (byte[] blob : blobs) {
+            out.write(blob);
+        }
+    }
+
+    private ClusterEncoder() {
+    }
+}
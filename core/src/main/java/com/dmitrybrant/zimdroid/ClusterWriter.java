@@ -0,0 +1,93 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.LZMA2Options;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encodes clusters on a fork-join pool and writes them to a ZIM output stream in the order in
+ * which they were added, recording the offset of each one. At most a fixed number of clusters
+ * are in flight at once, which bounds the memory used by pending blobs and encoded output.
+ */
+final class ClusterWriter {
+    private final ZimOutputStream out;
+    private final LZMA2Options lzmaOptions;
+    private final ForkJoinPool pool;
+    private final int maxPending;
+    private final ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+
+    private long[] offsets = new long[16];
+    private int clusterCount;
+
+    /**
+     * @param lzmaOptions Options for compressing clusters, or null to leave them uncompressed.
+     */
+    ClusterWriter(ZimOutputStream out, LZMA2Options lzmaOptions, ForkJoinPool pool) {
+        this.out = out;
+        this.lzmaOptions = lzmaOptions;
+        this.pool = pool;
+        maxPending = 2 * pool.getParallelism();
+    }
+
+    /**
+     * Queue a cluster made up of the given blobs. The list is not copied, so it must not be
+     * modified afterwards.
+     */
+    void add(final List<byte[]> blobs) throws IOException {
+        if (pending.size() >= maxPending) {
+            writeNext();
+        }
+        pending.add(pool.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return ClusterEncoder.encode(blobs, lzmaOptions);
+            }
+        }));
+    }
+
+    /**
+     * Write all remaining clusters.
+     * @return Offsets of the clusters in the stream, in the order they were added.
+     */
+    long[] finish() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        return Arrays.copyOf(offsets, clusterCount);
+    }
+
+    private void writeNext() throws IOException {
+        byte[] cluster;
+        try {
+            cluster = pending.remove().get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw new IOException("Interrupted while compressing clusters.", e);
+        } catch (ExecutionException e) {
+            cancel();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to compress cluster.", e.getCause());
+        }
+        if (clusterCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[clusterCount++] = out.getPosition();
+        out.write(cluster);
+    }
+
+    private void cancel() {
+        for (ForkJoinTask<byte[]> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,326 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * All directory entries of a ZIM file, in URL order or in title order. Instead of looking up
+ * each entry with two seeks, pointers are read from the pointer lists a batch at a time, and
+ * the directory entries of each batch are read in file order through a large window, so that
+ * walking the whole directory reads the file mostly sequentially.
+ *
+ * The entries can be iterated, or streamed in parallel: the spliterator splits the range of
+ * entries, and all parts read from the same file channel using positional reads. I/O errors
+ * during iteration are thrown as {@link UncheckedIOException}.
+ *
+ * On Android, this class requires API level 24 or later, for streams and
+ * {@link UncheckedIOException}.
+ */
+public class DirectoryEntries implements Iterable<DirectoryEntry>, Closeable {
+    private static final int BATCH_SIZE = 1024;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MAX_POINTER_GAP = 64;
+    private static final int ARTICLE_HEADER_SIZE = 16;
+    private static final int REDIRECT_HEADER_SIZE = 12;
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final ZimFile zimFile;
+    private final boolean byTitle;
+    private final FileChannel channel;
+
+    private DirectoryEntries(ZimFile file, boolean byTitle) throws IOException {
+        zimFile = file;
+        this.byTitle = byTitle;
+        channel = file.openChannel();
+    }
+
+    /**
+     * Get the directory entries of the given file in URL order, which is also the order of
+     * {@link DirectoryEntry#getUrlListIndex()}.
+     */
+    public static DirectoryEntries byUrl(ZimFile file) throws IOException {
+        return new DirectoryEntries(file, false);
+    }
+
+    /**
+     * Get the directory entries of the given file in title order. The entries will have their
+     * title list index set.
+     */
+    public static DirectoryEntries byTitle(ZimFile file) throws IOException {
+        return new DirectoryEntries(file, true);
+    }
+
+    public int size() {
+        return zimFile.getArticleCount();
+    }
+
+    @Override
+    public Iterator<DirectoryEntry> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<DirectoryEntry> spliterator() {
+        return new EntrySpliterator(0, size());
+    }
+
+    public Stream<DirectoryEntry> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(byte[] bytes, int length, long position) throws IOException {
+        if (read(bytes, length, position) != length) {
+            throw new IOException("Failed to read from stream.");
+        }
+    }
+
+    private int read(byte[] bytes, int length, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static int getIntLe(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+    private static long getLongLe(byte[] bytes, int offset) {
+        return (getIntLe(bytes, offset) & 0xFFFFFFFFL) | ((long) getIntLe(bytes, offset + 4) << 32);
+    }
+
+    /**
+     * Reads a contiguous range of entries a batch at a time. Each instance has its own buffers,
+     * so that split instances can be traversed on different threads.
+     */
+    private final class EntrySpliterator implements Spliterator<DirectoryEntry> {
+        private int index;
+        private final int end;
+
+        private DirectoryEntry[] batch;
+        private int batchPos;
+
+        private byte[] window = new byte[WINDOW_SIZE];
+        private long windowFilePos = -1;
+        private int windowLength;
+
+        EntrySpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DirectoryEntry> action) {
+            if (index >= end) {
+                return false;
+            }
+            if (batch == null || batchPos >= batch.length) {
+                try {
+                    batch = readBatch(index, Math.min(end, index + BATCH_SIZE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                batchPos = 0;
+            }
+            index++;
+            action.accept(batch[batchPos++]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<DirectoryEntry> trySplit() {
+            if (end - index <= BATCH_SIZE) {
+                return null;
+            }
+            int mid = index + (end - index) / 2;
+            EntrySpliterator prefix = new EntrySpliterator(index, mid);
+            index = mid;
+            batch = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        private DirectoryEntry[] readBatch(int from, int to) throws IOException {
+            int count = to - from;
+            final int[] urlIndices = new int[count];
+            if (byTitle) {
+                byte[] bytes = new byte[count * ZimReader.BYTES_PER_INT];
+                readFully(bytes, bytes.length, zimFile.getTitlePtrPos() + (long) ZimReader.BYTES_PER_INT * from);
+                for (int i = 0; i < count; i++) {
+                    urlIndices[i] = getIntLe(bytes, i * ZimReader.BYTES_PER_INT);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    urlIndices[i] = from + i;
+                }
+            }
+            final long[] direntPositions = readUrlPointers(urlIndices);
+
+            // Parse the entries in file order, so that they can be read through the window.
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(direntPositions[a], direntPositions[b]);
+                }
+            });
+
+            DirectoryEntry[] entries = new DirectoryEntry[count];
+            for (int i : order) {
+                entries[i] = readEntry(direntPositions[i], urlIndices[i]);
+                if (byTitle) {
+                    entries[i].setTitleListIndex(from + i);
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Read the URL pointers at the given indices, reading runs of nearby pointers at once.
+         */
+        private long[] readUrlPointers(final int[] urlIndices) throws IOException {
+            int count = urlIndices.length;
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(urlIndices[a], urlIndices[b]);
+                }
+            });
+
+            long[] positions = new long[count];
+            byte[] bytes = new byte[WINDOW_SIZE];
+            int maxRun = WINDOW_SIZE / ZimReader.BYTES_PER_LONG;
+            int runStart = 0;
+            while (runStart < count) {
+                int first = urlIndices[order[runStart]];
+                if (first < 0 || first >= zimFile.getArticleCount()) {
+                    throw new IOException("Invalid URL pointer index: " + first);
+                }
+                int runEnd = runStart + 1;
+                while (runEnd < count
+                        && urlIndices[order[runEnd]] - urlIndices[order[runEnd - 1]] <= MAX_POINTER_GAP
+                        && urlIndices[order[runEnd]] - first < maxRun) {
+                    runEnd++;
+                }
+                int last = urlIndices[order[runEnd - 1]];
+                if (last >= zimFile.getArticleCount()) {
+                    throw new IOException("Invalid URL pointer index: " + last);
+                }
+                int length = (last - first + 1) * ZimReader.BYTES_PER_LONG;
+                readFully(bytes, length, zimFile.getUrlPtrPos() + (long) ZimReader.BYTES_PER_LONG * first);
+                for (int i = runStart; i < runEnd; i++) {
+                    positions[order[i]] = getLongLe(bytes,
+                            (urlIndices[order[i]] - first) * ZimReader.BYTES_PER_LONG);
+                }
+                runStart = runEnd;
+            }
+            return positions;
+        }
+
+        private DirectoryEntry readEntry(long position, int urlIndex) throws IOException {
+            if (position < 0) {
+                throw new IOException("Failed to read from stream.");
+            }
+            while (true) {
+                if (position >= windowFilePos && position < windowFilePos + windowLength) {
+                    DirectoryEntry entry = parseEntry((int) (position - windowFilePos), urlIndex);
+                    if (entry != null) {
+                        return entry;
+                    }
+                    if (position == windowFilePos) {
+                        if (windowLength < window.length) {
+                            // The entry runs past the end of the file.
+                            throw new IOException("Failed to read from stream.");
+                        }
+                        // The entry is larger than the window.
+                        window = new byte[window.length * 2];
+                    }
+                }
+                windowFilePos = position;
+                windowLength = read(window, window.length, position);
+                if (windowLength <= 0) {
+                    // The pointer is at or past the end of the file.
+                    throw new IOException("Failed to read from stream.");
+                }
+            }
+        }
+
+        /**
+         * Parse the entry at the given offset in the window.
+         * @return The entry, or null if it extends past the end of the window.
+         */
+        private DirectoryEntry parseEntry(int offset, int urlIndex) {
+            if (offset + 2 > windowLength) {
+                return null;
+            }
+            int type = (window[offset] & 0xFF) | ((window[offset + 1] & 0xFF) << 8);
+            int headerSize = type == DirectoryEntry.TYPE_REDIRECT ? REDIRECT_HEADER_SIZE : ARTICLE_HEADER_SIZE;
+            int urlStart = offset + headerSize;
+            int urlEnd = findTerminator(urlStart);
+            if (urlEnd < 0) {
+                return null;
+            }
+            int titleEnd = findTerminator(urlEnd + 1);
+            if (titleEnd < 0) {
+                return null;
+            }
+            char namespace = (char) (window[offset + 3] & 0xFF);
+            int revision = getIntLe(window, offset + 4);
+            String url = new String(window, urlStart, urlEnd - urlStart, UTF_8);
+            String title = new String(window, urlEnd + 1, titleEnd - urlEnd - 1, UTF_8);
+            title = title.length() == 0 ? url : title;
+            if (type == DirectoryEntry.TYPE_REDIRECT) {
+                return new RedirectEntry(type, namespace, revision, getIntLe(window, offset + 8),
+                        url, title, urlIndex);
+            }
+            return new ArticleEntry(type, namespace, revision, getIntLe(window, offset + 8),
+                    getIntLe(window, offset + 12), url, title, urlIndex);
+        }
+
+        private int findTerminator(int start) {
+            for (int i = start; i < windowLength; i++) {
+                if (window[i] == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.dmitrybrant.zimdroid;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the measurements of any number of readers into counters and latency histograms,
+ * for inspecting in a debugger, logging, or exporting to a monitoring system. Recording is
+ * lock-free, so readers on different threads don't contend for it.
+ *
+ * On Android, this class requires API level 24 or later, for {@link LongAdder}.
+ */
+public class InMemoryZimMetrics implements ZimMetrics {
+    private static final int CACHE_COUNT = 3;
+
+    private final LongAdder[] cacheHits = newAdders(CACHE_COUNT);
+    private final LongAdder[] cacheMisses = newAdders(CACHE_COUNT);
+    private final LongAdder[] cacheEvictions = newAdders(CACHE_COUNT);
+    private final LongAdder lookupCount = new LongAdder();
+    private final LongAdder probeCount = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder seekCount = new LongAdder();
+    private final LongAdder clusterDecodeCount = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+    private final LongAdder blobSkipBytes = new LongAdder();
+    private final LongAdder redirectHops = new LongAdder();
+    private final Histogram lookupLatency = new Histogram();
+    private final Histogram decodeLatency = new Histogram();
+
+    @Override
+    public void onCacheHit(int cache) {
+        cacheHits[cache].increment();
+    }
+
+    @Override
+    public void onCacheMiss(int cache) {
+        cacheMisses[cache].increment();
+    }
+
+    @Override
+    public void onCacheEviction(int cache, long size) {
+        cacheEvictions[cache].increment();
+    }
+
+    @Override
+    public void onLookup(int list, String key, int probes, long nanos) {
+        lookupCount.increment();
+        probeCount.add(probes);
+        lookupLatency.record(nanos);
+    }
+
+    @Override
+    public void onFileRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void onSeek() {
+        seekCount.increment();
+    }
+
+    @Override
+    public void onClusterDecoded(int clusterNumber, int compressionType, long compressedBytes,
+                                 long bytes, long nanos) {
+        clusterDecodeCount.increment();
+        this.compressedBytes.add(compressedBytes);
+        decodedBytes.add(bytes);
+        decodeLatency.record(nanos);
+    }
+
+    @Override
+    public void onBlobSkip(long bytes) {
+        blobSkipBytes.add(bytes);
+    }
+
+    @Override
+    public void onRedirect(int hops) {
+        redirectHops.add(hops);
+    }
+
+    /**
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     */
+    public long getCacheHitCount(int cache) {
+        return cacheHits[cache].sum();
+    }
+
+    /**
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     */
+    public long getCacheMissCount(int cache) {
+        return cacheMisses[cache].sum();
+    }
+
+    /**
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     */
+    public long getCacheEvictionCount(int cache) {
+        return cacheEvictions[cache].sum();
+    }
+
+    public long getLookupCount() {
+        return lookupCount.sum();
+    }
+
+    public long getProbeCount() {
+        return probeCount.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getSeekCount() {
+        return seekCount.sum();
+    }
+
+    public long getClusterDecodeCount() {
+        return clusterDecodeCount.sum();
+    }
+
+    /**
+     * @return Total size in the file of the decoded clusters.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    public long getBlobSkipBytes() {
+        return blobSkipBytes.sum();
+    }
+
+    public long getRedirectHops() {
+        return redirectHops.sum();
+    }
+
+    /**
+     * @return Durations of binary searches, in nanoseconds.
+     */
+    public Histogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * @return Durations of cluster decodes, in nanoseconds.
+     */
+    public Histogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * Start over from zero. Measurements recorded at the same time may be partly lost.
+     */
+    public void reset() {
+        for (int i = 0; i < CACHE_COUNT; i++) {
+            cacheHits[i].reset();
+            cacheMisses[i].reset();
+            cacheEvictions[i].reset();
+        }
+        lookupCount.reset();
+        probeCount.reset();
+        bytesRead.reset();
+        seekCount.reset();
+        clusterDecodeCount.reset();
+        compressedBytes.reset();
+        decodedBytes.reset();
+        blobSkipBytes.reset();
+        redirectHops.reset();
+        lookupLatency.reset();
+        decodeLatency.reset();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * A histogram of non-negative values with buckets of logarithmic size, like HdrHistogram:
+     * every power of two is split into 16 buckets, so any value is reported within 1/16 (about
+     * 6%) of its actual value, and the whole range of longs takes a fixed 960 buckets.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+        private static final double PERCENT = 100.0;
+
+        private final LongAdder[] counts = newAdders(BUCKET_COUNT);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            counts[getBucket(value)].increment();
+            sum.add(value);
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+                currentMax = max.get();
+            }
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : counts) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long count = getCount();
+            return count > 0 ? (double) sum.sum() / count : 0;
+        }
+
+        /**
+         * @param percentile Between 0 and 100, e.g. 99 for the value that 99% of the recorded
+         *                   values are at or below.
+         * @return The highest value of the bucket that holds the given percentile, or 0 if
+         *         nothing was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            long[] snapshot = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                snapshot[i] = counts[i].sum();
+                count += snapshot[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(Math.min(percentile, PERCENT) / PERCENT * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += snapshot[i];
+                if (seen >= target) {
+                    return Math.min(getBucketEnd(i) - 1, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        public void reset() {
+            for (LongAdder bucket : counts) {
+                bucket.reset();
+            }
+            sum.reset();
+            max.set(0);
+        }
+
+        static int getBucket(long value) {
+            if (value < SUB_BUCKET_COUNT) {
+                return (int) value;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+            return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+        }
+
+        /**
+         * @return The lowest value above the given bucket, or Long.MAX_VALUE for the last one.
+         */
+        static long getBucketEnd(int bucket) {
+            if (bucket < SUB_BUCKET_COUNT) {
+                return bucket + 1;
+            }
+            int shift = bucket / SUB_BUCKET_COUNT - 1;
+            long end = (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT + 1) << shift;
+            return end > 0 ? end : Long.MAX_VALUE;
+        }
+    }
+}
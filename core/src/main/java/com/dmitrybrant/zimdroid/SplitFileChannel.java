@@ -0,0 +1,224 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only channel over the parts of a split ZIM file (.zimaa, .zimab, ...), as if they were
+ * a single file. Positional reads are passed straight to the part that holds the data, so the
+ * parts are read in place as fast as a single file would be, and several threads can read at
+ * the same time.
+ */
+final class SplitFileChannel extends FileChannel {
+    private final FileChannel[] parts;
+    // Position of the first byte of each part, followed by the total size.
+    private final long[] partPositions;
+    private long position;
+
+    SplitFileChannel(File[] files) throws IOException {
+        parts = new FileChannel[files.length];
+        partPositions = new long[files.length + 1];
+        try {
+            for (int i = 0; i < files.length; i++) {
+                parts[i] = new FileInputStream(files[i]).getChannel();
+                partPositions[i + 1] = partPositions[i] + parts[i].size();
+            }
+        } catch (IOException e) {
+            implCloseChannel();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (position >= size()) {
+            return -1;
+        }
+        int total = 0;
+        int limit = dst.limit();
+        try {
+            int part = findPart(position);
+            while (dst.hasRemaining() && part < parts.length) {
+                long partEnd = partPositions[part + 1];
+                if (position >= partEnd) {
+                    part++;
+                    continue;
+                }
+                // Don't let a read run past the end of the part, which is the end of its file.
+                dst.limit((int) Math.min(limit, dst.position() + partEnd - position));
+                int count = parts[part].read(dst, position - partPositions[part]);
+                dst.limit(limit);
+                if (count <= 0) {
+                    break;
+                }
+                total += count;
+                position += count;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+        return total > 0 ? total : -1;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int count = read(dst, position);
+        if (count > 0) {
+            position += count;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int count = read(dsts[i]);
+            if (count < 0) {
+                return total > 0 ? total : -1;
+            }
+            total += count;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long position() {
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return partPositions[parts.length];
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        long total = 0;
+        long end = Math.min(size(), position + count);
+        while (position < end) {
+            int part = findPart(position);
+            long partCount = Math.min(end, partPositions[part + 1]) - position;
+            long transferred = parts[part].transferTo(position - partPositions[part], partCount, target);
+            if (transferred <= 0) {
+                break;
+            }
+            total += transferred;
+            position += transferred;
+        }
+        return total;
+    }
+
+    /**
+     * Map a region of the file, which has to lie within a single part.
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        int part = findPart(position);
+        if (position + size > partPositions[part + 1] && part < parts.length - 1) {
+            throw new IOException("Region spans several parts of a split ZIM file.");
+        }
+        return parts[part].map(mode, position - partPositions[part], size);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // Nothing is ever written.
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Split ZIM files can't be locked.");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Split ZIM files can't be locked.");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        IOException exception = null;
+        for (FileChannel part : parts) {
+            if (part == null) {
+                continue;
+            }
+            try {
+                part.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Find the part that holds the byte at the given position, or the last part if the position
+     * is past the end.
+     */
+    private int findPart(long position) {
+        int index = Arrays.binarySearch(partPositions, 0, parts.length, position);
+        // Empty parts share their position with the next part, so skip to the last of those.
+        if (index >= 0) {
+            while (index + 1 < parts.length && partPositions[index + 1] == position) {
+                index++;
+            }
+            return index;
+        }
+        return -index - 2;
+    }
+}
@@ -15,7 +15,15 @@ public class Util {
 
     public static void skipFully(InputStream stream, long bytes) throws IOException {
         while (bytes > 0) {
-            bytes -= stream.skip(bytes);
+            long skipped = stream.skip(bytes);
+            if (skipped <= 0) {
+                // skip() may legitimately return 0, so fall back to read() to tell apart EOF.
+                if (stream.read() < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
         }
     }
 
@@ -25,6 +33,14 @@ public class Util {
                 | ((buffer[2] & 0xFF) << 16) | ((buffer[3] & 0xFF) << 24));
     }
 
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     private Util() {
     }
 }
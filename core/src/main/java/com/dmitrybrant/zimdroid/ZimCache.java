@@ -0,0 +1,205 @@
+package com.dmitrybrant.zimdroid;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of directory entries and decoded clusters that can be shared by any number of
+ * {@link ZimReader}s, within a single budget of bytes. See {@link ZimReader#ZimReader(ZimFile, ZimCache)}.
+ *
+ * Items are evicted in least-recently-used order, but only from files that use more than their
+ * fair share of the budget, i.e. the budget divided by the number of files that have anything
+ * cached. This way a burst of activity in one file can't push everything else out of the cache.
+ * Items of a file stay cached after its reader is closed, so that they can be used by the next
+ * reader of the same file. This class is thread safe.
+ */
+public class ZimCache {
+    static final int KIND_URL_ENTRY = ZimMetrics.CACHE_URL_ENTRY;
+    static final int KIND_TITLE_ENTRY = ZimMetrics.CACHE_TITLE_ENTRY;
+    static final int KIND_CLUSTER = ZimMetrics.CACHE_CLUSTER;
+
+    private final Map<Object, FileItems> owners = new HashMap<>();
+    private final long maxSize;
+    private long size;
+    // Counts accesses, to order the items of different files by when they were last used.
+    private long clock;
+    private volatile ZimMetrics metrics = ZimMetrics.NONE;
+
+    /**
+     * @param maxSize Maximum total size of the cached items, in bytes. Sizes are estimates of
+     *                the memory used by the items.
+     */
+    public ZimCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Estimated total size of the cached items, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @param metrics Receives evictions. Defaults to {@link ZimMetrics#NONE}.
+     */
+    public void setMetrics(ZimMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Remove everything.
+     */
+    public synchronized void clear() {
+        owners.clear();
+        size = 0;
+    }
+
+    /**
+     * @param owner Identifies the file that the item belongs to.
+     */
+    synchronized Object get(Object owner, int kind, long index) {
+        FileItems file = owners.get(owner);
+        Item item = file != null ? file.items.get(new Key(kind, index)) : null;
+        if (item == null) {
+            return null;
+        }
+        item.lastUsed = ++clock;
+        return item.value;
+    }
+
+    /**
+     * Add an item, evicting others as needed. Items larger than the whole budget aren't added.
+     */
+    synchronized void put(Object owner, int kind, long index, Object value, long itemSize) {
+        if (itemSize > maxSize) {
+            return;
+        }
+        // Every item counts for something, so that every file with items has a size.
+        itemSize = Math.max(1, itemSize);
+        FileItems file = owners.get(owner);
+        if (file == null) {
+            file = new FileItems(owner);
+            owners.put(owner, file);
+        }
+        Key key = new Key(kind, index);
+        Item old = file.items.put(key, new Item(value, itemSize, ++clock));
+        if (old != null) {
+            file.size -= old.size;
+            size -= old.size;
+        }
+        file.size += itemSize;
+        size += itemSize;
+
+        while (size > maxSize) {
+            evict(findVictim(file));
+        }
+    }
+
+    /**
+     * Find the file whose least recently used item is to be evicted: of the files that use more
+     * than their fair share, the one whose item was used least recently, or if the only such file
+     * is the one that was just added to, the file with the least recently used item. Each file
+     * keeps its items in least-recently-used order, so this only looks at one item per file.
+     * @param keep The file that was just added to, whose newest item fits into the budget by itself.
+     */
+    private FileItems findVictim(FileItems keep) {
+        long fairShare = maxSize / owners.size();
+        FileItems victim = null;
+        boolean victimIsOver = false;
+        for (FileItems file : owners.values()) {
+            if (file == keep && file.items.size() == 1) {
+                // Only the item that was just added.
+                continue;
+            }
+            boolean isOver = file.size > fairShare;
+            if (victim == null || (isOver && !victimIsOver)
+                    || (isOver == victimIsOver && file.eldest().lastUsed < victim.eldest().lastUsed)) {
+                victim = file;
+                victimIsOver = isOver;
+            }
+        }
+        return victim;
+    }
+
+    private void evict(FileItems file) {
+        Iterator<Map.Entry<Key, Item>> it = file.items.entrySet().iterator();
+        Map.Entry<Key, Item> eldest = it.next();
+        it.remove();
+        file.size -= eldest.getValue().size;
+        size -= eldest.getValue().size;
+        if (file.items.isEmpty()) {
+            owners.remove(file.owner);
+        }
+        metrics.onCacheEviction(eldest.getKey().kind, eldest.getValue().size);
+    }
+
+    /**
+     * Remove all items of the given file.
+     */
+    synchronized void removeAll(Object owner) {
+        FileItems file = owners.remove(owner);
+        if (file != null) {
+            size -= file.size;
+        }
+    }
+
+    /**
+     * The items of one file, in least-recently-used order, and their total size.
+     */
+    private static final class FileItems {
+        final Object owner;
+        final LinkedHashMap<Key, Item> items = new LinkedHashMap<>(16, 0.75f, true);
+        long size;
+
+        FileItems(Object owner) {
+            this.owner = owner;
+        }
+
+        Item eldest() {
+            return items.values().iterator().next();
+        }
+    }
+
+    private static final class Key {
+        final int kind;
+        final long index;
+
+        Key(int kind, long index) {
+            this.kind = kind;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return kind * 31 + (int) (index ^ (index >>> 32));
+        }
+    }
+
+    private static final class Item {
+        final Object value;
+        final long size;
+        long lastUsed;
+
+        Item(Object value, long size, long lastUsed) {
+            this.value = value;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Extracts the contents of a ZIM file into a directory tree, with one file per entry at
+ * {@code <namespace>/<url>} under the output directory. Redirects are not extracted.
+ *
+ * Entries are grouped by cluster, so that every cluster is read and decoded exactly once.
+ * Clusters are decoded on a fork-join pool, and their blobs are handed to a writer thread
+ * through a bounded queue, which together with a limit on the number of clusters in flight
+ * keeps memory usage bounded regardless of the size of the file.
+ *
+ * On Android, this class requires API level 24 or later, since it walks the directory with
+ * {@link DirectoryEntries}.
+ */
+public class ZimExtractor {
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Receives progress updates during extraction. Updates are delivered on the writer thread,
+     * at most a couple of times per second, and once more when extraction is complete.
+     */
+    public interface ProgressListener {
+        /**
+         * @param entriesWritten Number of entries written so far.
+         * @param entryCount Total number of entries to write.
+         * @param bytesWritten Number of content bytes written so far.
+         * @param bytesPerSecond Average rate at which content has been written so far.
+         */
+        void onProgress(int entriesWritten, int entryCount, long bytesWritten, double bytesPerSecond);
+    }
+
+    private final ZimFile zimFile;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private ProgressListener progressListener;
+    private int lzmaDictSize;
+    private boolean verifyChecks = true;
+
+    public ZimExtractor(ZimFile file) {
+        zimFile = file;
+    }
+
+    /**
+     * @param pool Pool on which to decode clusters. Defaults to the common pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param size Maximum number of decoded entries waiting to be written.
+     */
+    public void setQueueSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Queue size must be at least 1.");
+        }
+        queueSize = size;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Set the dictionary size that will be used by the LZMA decoder.
+     * See {@link ZimReader#setLzmaDictSize(int)}.
+     */
+    public void setLzmaDictSize(int dictSize) {
+        lzmaDictSize = dictSize;
+    }
+
+    /**
+     * See {@link ZimReader#setVerifyChecks(boolean)}.
+     */
+    public void setVerifyChecks(boolean verify) {
+        verifyChecks = verify;
+    }
+
+    /**
+     * Extract every entry that isn't a redirect into the given directory.
+     * @throws IOException if the ZIM file can't be read, or an entry can't be written, e.g.
+     *                     because its URL would lead outside the output directory, or because
+     *                     another entry's URL uses it as a directory.
+     */
+    public void extract(File outputDir) throws IOException {
+        List<Target> targets = collectTargets(outputDir);
+        SingleXZInputStream.setLZMA2DictSize(lzmaDictSize);
+
+        FileChannel channel = zimFile.openChannel();
+        Writer writer = new Writer(targets.size(), new ArrayBlockingQueue<WriteRequest>(queueSize));
+        Thread writerThread = new Thread(writer, "ZimExtractor writer");
+        writerThread.start();
+
+        ArrayDeque<ForkJoinTask<Void>> pending = new ArrayDeque<>();
+        int maxPending = 2 * pool.getParallelism();
+        IOException exception = null;
+        try {
+            int start = 0;
+            while (start < targets.size() && writer.error == null) {
+                int end = start + 1;
+                while (end < targets.size() && targets.get(end).clusterNumber == targets.get(start).clusterNumber) {
+                    end++;
+                }
+                if (pending.size() >= maxPending) {
+                    waitFor(pending.remove());
+                }
+                pending.add(pool.submit(new ClusterTask(channel, targets.subList(start, end), writer)));
+                start = end;
+            }
+            while (!pending.isEmpty()) {
+                waitFor(pending.remove());
+            }
+        } catch (IOException e) {
+            exception = e;
+            // Let running tasks finish before the writer stops draining the queue.
+            for (ForkJoinTask<Void> task : pending) {
+                task.cancel(false);
+            }
+            for (ForkJoinTask<Void> task : pending) {
+                task.quietlyJoin();
+            }
+        } finally {
+            writer.finish();
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (exception == null) {
+                    exception = new IOException("Interrupted while extracting.", e);
+                }
+            }
+            channel.close();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        if (writer.error != null) {
+            throw writer.error;
+        }
+    }
+
+    /**
+     * Find every entry to extract and its output file, sorted by cluster and blob.
+     */
+    private List<Target> collectTargets(File outputDir) throws IOException {
+        String rootPath = outputDir.getCanonicalPath() + File.separator;
+        List<Target> targets = new ArrayList<>();
+        try (DirectoryEntries entries = DirectoryEntries.byUrl(zimFile)) {
+            for (DirectoryEntry entry : entries) {
+                if (!(entry instanceof ArticleEntry)) {
+                    continue;
+                }
+                File file = new File(new File(outputDir, String.valueOf(entry.getNamespace())), entry.getUrl());
+                if (!file.getCanonicalPath().startsWith(rootPath)) {
+                    throw new IOException("Entry URL leads outside the output directory: " + entry.getUrl());
+                }
+                ArticleEntry article = (ArticleEntry) entry;
+                targets.add(new Target(article.getClusterNumber(), article.getBlobNumber(), file));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Collections.sort(targets, new Comparator<Target>() {
+            @Override
+            public int compare(Target a, Target b) {
+                return a.clusterNumber != b.clusterNumber ? Integer.compare(a.clusterNumber, b.clusterNumber)
+                        : Integer.compare(a.blobNumber, b.blobNumber);
+            }
+        });
+        return targets;
+    }
+
+    private static void waitFor(ForkJoinTask<Void> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to decode cluster.", e.getCause());
+        }
+    }
+
+    private static final class Target {
+        final int clusterNumber;
+        final int blobNumber;
+        final File file;
+
+        Target(int clusterNumber, int blobNumber, File file) {
+            this.clusterNumber = clusterNumber;
+            this.blobNumber = blobNumber;
+            this.file = file;
+        }
+    }
+
+    private static final class WriteRequest {
+        // Marks the end of the queue.
+        static final WriteRequest END = new WriteRequest(null, null);
+
+        final File file;
+        final byte[] content;
+
+        WriteRequest(File file, byte[] content) {
+            this.file = file;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Decodes one cluster and queues the blobs that are to be extracted from it.
+     */
+    private final class ClusterTask implements Callable<Void> {
+        private final FileChannel channel;
+        private final List<Target> targets;
+        private final Writer writer;
+
+        ClusterTask(FileChannel channel, List<Target> targets, Writer writer) {
+            this.channel = channel;
+            this.targets = targets;
+            this.writer = writer;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int clusterNumber = targets.get(0).clusterNumber;
+            ByteBuffer pointer = ByteBuffer.allocate(ZimReader.BYTES_PER_LONG);
+            long pointerPos = zimFile.getClusterPtrPos() + (long) clusterNumber * ZimReader.BYTES_PER_LONG;
+            while (pointer.hasRemaining()) {
+                if (channel.read(pointer, pointerPos + pointer.position()) < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+            }
+            pointer.flip();
+            long clusterPos = Long.reverseBytes(pointer.getLong());
+
+            byte[][] blobs = ClusterDecoder.decode(new ChannelInputStream(channel, clusterPos), verifyChecks,
+                    channel.size() - clusterPos);
+            for (Target target : targets) {
+                if (target.blobNumber >= blobs.length) {
+                    throw new IOException("Blob number greater than total blobs.");
+                }
+                writer.put(new WriteRequest(target.file, blobs[target.blobNumber]));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes queued blobs to their files and reports progress.
+     */
+    private final class Writer implements Runnable {
+        private final int entryCount;
+        private final BlockingQueue<WriteRequest> queue;
+        private final long startTime = System.currentTimeMillis();
+
+        volatile IOException error;
+        private int entriesWritten;
+        private long bytesWritten;
+        private long lastProgressTime;
+
+        Writer(int entryCount, BlockingQueue<WriteRequest> queue) {
+            this.entryCount = entryCount;
+            this.queue = queue;
+        }
+
+        void put(WriteRequest request) throws IOException {
+            if (error != null) {
+                throw new IOException("Extraction failed.", error);
+            }
+            try {
+                queue.put(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting.", e);
+            }
+        }
+
+        void finish() {
+            // Blocking here is fine: the writer keeps draining the queue even after an error.
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(WriteRequest.END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WriteRequest request;
+                try {
+                    request = queue.take();
+                } catch (InterruptedException e) {
+                    // Keep draining until END, or finish() would block on a full queue.
+                    if (error == null) {
+                        error = new IOException("Interrupted while extracting.", e);
+                    }
+                    continue;
+                }
+                if (request == WriteRequest.END) {
+                    break;
+                }
+                if (error != null) {
+                    continue;
+                }
+                try {
+                    write(request);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (error == null) {
+                reportProgress(true);
+            }
+        }
+
+        private void write(WriteRequest request) throws IOException {
+            File parent = request.file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Failed to create directory " + parent);
+            }
+            try (OutputStream out = new FileOutputStream(request.file)) {
+                out.write(request.content);
+            }
+            entriesWritten++;
+            bytesWritten += request.content.length;
+            reportProgress(false);
+        }
+
+        private void reportProgress(boolean force) {
+            if (progressListener == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (!force && now - lastProgressTime < PROGRESS_INTERVAL_MILLIS) {
+                return;
+            }
+            lastProgressTime = now;
+            double seconds = Math.max(1, now - startTime) / (double) MILLIS_PER_SECOND;
+            progressListener.onProgress(entriesWritten, entryCount, bytesWritten, bytesWritten / seconds);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representation of a ZIM file.
+ *
+ * A ZIM file may be split into parts named like foo.zimaa, foo.zimab, and so on, e.g. to fit
+ * on a FAT32 file system. Such a file can be given by the path of its first part, or by the path
+ * it would have as a single file (foo.zim), and is read in place. Use {@link #openChannel()}
+ * rather than opening the file directly, to read any kind of file.
+ * Copyright Dmitry Brant, 2017-2018.
+ *
+ * Loosely based on original implementation by Arunesh Mathur
+ */
+public class ZimFile extends File {
+    private static final int ZIM_HEADER_MAGIC = 0x044D495A;
+    private static final int UUID_SIZE = 16;
+    // Size of the header in files that have a checksum; older files end the header before it.
+    private static final int CHECKSUM_HEADER_SIZE = 80;
+    private static final String FIRST_PART_SUFFIX = "aa";
+    private static final int LETTER_COUNT = 26;
+    private static final int MAX_PARTS = LETTER_COUNT * LETTER_COUNT;
+
+    private int version;
+    private final byte[] uuid = new byte[UUID_SIZE];
+    private int articleCount;
+    private int clusterCount;
+    private long urlPtrPos;
+    private long titlePtrPos;
+    private long clusterPtrPos;
+    private long mimeListPos;
+    private int mainPage;
+    private int layoutPage;
+    private long checksumPos;
+
+    private final List<String> mimeTypeList = new ArrayList<>();
+    private final File[] parts;
+    // Position of the first byte of each part, followed by the total size.
+    private final long[] partPositions;
+
+    public ZimFile(String path) throws IOException {
+        super(path);
+        parts = findParts();
+        partPositions = new long[parts.length + 1];
+        for (int i = 0; i < parts.length; i++) {
+            partPositions[i + 1] = partPositions[i] + parts[i].length();
+        }
+        readHeader();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public byte[] getUuid() {
+        return uuid.clone();
+    }
+
+    public int getArticleCount() {
+        return articleCount;
+    }
+
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    public long getUrlPtrPos() {
+        return urlPtrPos;
+    }
+
+    public long getTitlePtrPos() {
+        return titlePtrPos;
+    }
+
+    public long getClusterPtrPos() {
+        return clusterPtrPos;
+    }
+
+    public String getMIMEType(int mimeNumber) {
+        return mimeTypeList.get(mimeNumber);
+    }
+
+    public int getMIMETypeCount() {
+        return mimeTypeList.size();
+    }
+
+    public long getHeaderSize() {
+        return mimeListPos;
+    }
+
+    public int getMainPage() {
+        return mainPage;
+    }
+
+    public int getLayoutPage() {
+        return layoutPage;
+    }
+
+    /**
+     * @return Position of the MD5 checksum of the file, which covers everything before it, or 0
+     *         if the file doesn't have a checksum.
+     */
+    public long getChecksumPos() {
+        return checksumPos;
+    }
+
+    /**
+     * @return The files that make up this ZIM file, in order. That's just this file, unless the
+     *         file is split into parts.
+     */
+    public File[] getParts() {
+        return parts.clone();
+    }
+
+    public boolean isSplit() {
+        return parts.length > 1 || parts[0] != this;
+    }
+
+    /**
+     * @return Total size of the file, or of all its parts.
+     */
+    @Override
+    public long length() {
+        return isSplit() ? partPositions[parts.length] : super.length();
+    }
+
+    /**
+     * @return Whether the file, or all its parts, exist.
+     */
+    @Override
+    public boolean exists() {
+        if (!isSplit()) {
+            return super.exists();
+        }
+        for (File part : parts) {
+            if (!part.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the file, or all its parts, are normal files.
+     */
+    @Override
+    public boolean isFile() {
+        if (!isSplit()) {
+            return super.isFile();
+        }
+        for (File part : parts) {
+            if (!part.isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the file, or all its parts, can be read.
+     */
+    @Override
+    public boolean canRead() {
+        if (!isSplit()) {
+            return super.canRead();
+        }
+        for (File part : parts) {
+            if (!part.canRead()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open a channel for reading the file, or all its parts as one.
+     */
+    public FileChannel openChannel() throws IOException {
+        return isSplit() ? new SplitFileChannel(parts) : new FileInputStream(this).getChannel();
+    }
+
+    ZimInputStream openInputStream(int bufferSize) throws IOException {
+        return isSplit() ? new ZimInputStream(openChannel(), bufferSize)
+                : new ZimInputStream(new FileInputStream(this), bufferSize);
+    }
+
+    /**
+     * Find the part that holds a region of the file.
+     * @return The index of the part, or -1 if the region spans several parts.
+     */
+    int findPart(long position, long length) {
+        for (int i = 0; i < parts.length; i++) {
+            if (position < partPositions[i + 1]) {
+                return position + length <= partPositions[i + 1] ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Position of the first byte of a part within the whole file.
+     */
+    long getPartPosition(int part) {
+        return partPositions[part];
+    }
+
+    private File[] findParts() {
+        String path = getPath();
+        String firstPartPath;
+        if (path.endsWith(".zim" + FIRST_PART_SUFFIX)) {
+            firstPartPath = path;
+        } else if (!super.exists() && new File(path + FIRST_PART_SUFFIX).exists()) {
+            firstPartPath = path + FIRST_PART_SUFFIX;
+        } else {
+            return new File[] {this};
+        }
+        String basePath = firstPartPath.substring(0, firstPartPath.length() - FIRST_PART_SUFFIX.length());
+        List<File> partList = new ArrayList<>();
+        for (int i = 0; i < MAX_PARTS; i++) {
+            File part = new File(basePath + (char) ('a' + i / LETTER_COUNT) + (char) ('a' + i % LETTER_COUNT));
+            if (!part.exists()) {
+                break;
+            }
+            partList.add(part);
+        }
+        if (partList.isEmpty()) {
+            // Let opening the file report that it's missing.
+            return new File[] {this};
+        }
+        return partList.toArray(new File[0]);
+    }
+
+    private void readHeader() throws IOException {
+        ZimInputStream reader = openInputStream(ZimInputStream.DEFAULT_BUFFER_SIZE);
+        // Read the contents of the header
+        try {
+            int magic = reader.readIntLe();
+            if (magic != ZIM_HEADER_MAGIC) {
+                throw new IOException("Invalid ZIM file.");
+            }
+            version = reader.readIntLe();
+            if (reader.read(uuid) != uuid.length) {
+                throw new IOException("Failed to read from stream.");
+            }
+            articleCount = reader.readIntLe();
+            clusterCount = reader.readIntLe();
+            urlPtrPos = reader.readLongLe();
+            titlePtrPos = reader.readLongLe();
+            clusterPtrPos = reader.readLongLe();
+            mimeListPos = reader.readLongLe();
+            mainPage = reader.readIntLe();
+            layoutPage = reader.readIntLe();
+            if (mimeListPos >= CHECKSUM_HEADER_SIZE) {
+                checksumPos = reader.readLongLe();
+            }
+
+            reader.seek(mimeListPos);
+            while (true) {
+                String mimeStr = reader.readString();
+                if (mimeStr.length() == 0) {
+                    break;
+                }
+                mimeTypeList.add(mimeStr);
+            }
+
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates synthetic ZIM files of arbitrary size, for scale testing and benchmarking.
+ *
+ * The generated archive contains the requested number of entries in the article namespace, a
+ * portion of which are redirects to other articles, followed by a handful of metadata entries.
+ * Article contents are HTML-like text with sizes drawn from the configured distribution.
+ * Every property of an entry is derived from its index and the seed, so the archive is written
+ * front to back without holding the entries in memory, and generating twice with the same
+ * settings produces identical files.
+ */
+public class ZimGenerator {
+    public static final int BLOB_SIZE_UNIFORM = 0;
+    public static final int BLOB_SIZE_LOG_NORMAL = 1;
+
+    private static final int MIME_TYPE_HTML = 0;
+    private static final int MIME_TYPE_TEXT = 1;
+    private static final int ARTICLE_DIRENT_SIZE = 16;
+    private static final int REDIRECT_DIRENT_SIZE = 12;
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    // Capitalized and sorted, so that consecutive ranges of entries can share a word while
+    // keeping the entries in URL (and title) order.
+    private static final String[] WORDS = {
+            "Abbey", "Acid", "Anchor", "Apple", "Arch", "Atlas", "Badge", "Banner", "Basin", "Beacon",
+            "Bridge", "Cabin", "Canal", "Castle", "Cedar", "Chapel", "Circuit", "Comet", "Delta",
+            "Desert", "Dragon", "Eagle", "Echo", "Engine", "Falcon", "Fjord", "Forest", "Galaxy",
+            "Garden", "Glacier", "Harbor", "Helix", "Horizon", "Island", "Ivory", "Jungle", "Kernel",
+            "Lagoon", "Lantern", "Meadow", "Meteor", "Nebula", "Oasis", "Orbit", "Palace", "Prism",
+            "Quartz", "Raven", "River", "Saddle", "Summit", "Temple", "Thunder", "Tundra", "Valley",
+            "Violet", "Willow", "Winter", "Yarrow", "Zenith"
+    };
+    private static final String[][] METADATA = {
+            {"Creator", "zimdroid"},
+            {"Date", "2020-01-01"},
+            {"Description", "Synthetic archive for testing"},
+            {"Language", "eng"},
+            {"Title", "Synthetic"}
+    };
+
+    private int entryCount = 1000;
+    private double redirectRatio = 0.2;
+    private int clusterSize = 1024 * 1024;
+    private int blobSizeDistribution = BLOB_SIZE_LOG_NORMAL;
+    private int minBlobSize = 256;
+    private int maxBlobSize = 64 * 1024;
+    private LZMA2Options lzmaOptions = new LZMA2Options();
+    private long seed;
+
+    /**
+     * @param count Number of entries in the article namespace, including redirects.
+     */
+    public void setEntryCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one entry is required.");
+        }
+        entryCount = count;
+    }
+
+    /**
+     * @param ratio Approximate fraction of entries that are redirects, from 0 to 1.
+     */
+    public void setRedirectRatio(double ratio) {
+        if (ratio < 0 || ratio >= 1) {
+            throw new IllegalArgumentException("Redirect ratio must be at least 0 and less than 1.");
+        }
+        redirectRatio = ratio;
+    }
+
+    /**
+     * @param size Target uncompressed size of each cluster, in bytes. Blobs are added to a
+     *             cluster until the next one would exceed this size.
+     */
+    public void setClusterSize(int size) {
+        clusterSize = size;
+    }
+
+    /**
+     * @param distribution Either {@link #BLOB_SIZE_UNIFORM}, or {@link #BLOB_SIZE_LOG_NORMAL}
+     *                     for many small blobs and a long tail of large ones.
+     * @param minSize Smallest blob size, in bytes.
+     * @param maxSize Largest blob size, in bytes.
+     */
+    public void setBlobSizes(int distribution, int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid blob size range.");
+        }
+        blobSizeDistribution = distribution;
+        minBlobSize = minSize;
+        maxBlobSize = maxSize;
+    }
+
+    /**
+     * @param compressed Whether to compress clusters with LZMA. Defaults to true.
+     */
+    public void setCompressed(boolean compressed) {
+        lzmaOptions = compressed ? new LZMA2Options() : null;
+    }
+
+    /**
+     * @param preset LZMA compression preset, from 0 (fastest) to 9. Only used when compressed.
+     */
+    public void setLzmaPreset(int preset) throws UnsupportedOptionsException {
+        if (lzmaOptions != null) {
+            lzmaOptions.setPreset(preset);
+        }
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the URL of an article-namespace entry, without the namespace prefix.
+     * @param index Index of the entry, from 0 to the entry count.
+     */
+    public String getUrl(int index) {
+        return getTitle(index).replace(' ', '_');
+    }
+
+    /**
+     * Get the title of an article-namespace entry.
+     * @param index Index of the entry, from 0 to the entry count.
+     */
+    public String getTitle(int index) {
+        String number = Integer.toString(index);
+        char[] padding = new char[Integer.toString(entryCount - 1).length() - number.length()];
+        Arrays.fill(padding, '0');
+        return WORDS[(int) ((long) index * WORDS.length / entryCount)] + " " + new String(padding) + number;
+    }
+
+    /**
+     * Whether an article-namespace entry is a redirect. The first entry (the main page) never is.
+     * @param index Index of the entry, from 0 to the entry count.
+     */
+    public boolean isRedirect(int index) {
+        return index > 0 && toUnitInterval(hash(index, 0)) < redirectRatio;
+    }
+
+    /**
+     * Get the index of the article that a redirect entry points to.
+     * @param index Index of a redirect entry.
+     */
+    public int getRedirectTarget(int index) {
+        int target = (int) (toUnitInterval(hash(index, 2)) * entryCount);
+        while (isRedirect(target)) {
+            target = (target + 1) % entryCount;
+        }
+        return target;
+    }
+
+    /**
+     * Get the size of the content of an article entry, in bytes.
+     * @param index Index of an entry that is not a redirect.
+     */
+    public int getBlobSize(int index) {
+        double x = toUnitInterval(hash(index, 1));
+        double size;
+        if (blobSizeDistribution == BLOB_SIZE_UNIFORM) {
+            size = minBlobSize + x * (maxBlobSize - minBlobSize + 1);
+        } else {
+            // Median at the geometric mean of the range, which then spans about +/-3 sigma.
+            double logMin = Math.log(minBlobSize);
+            double logMax = Math.log(maxBlobSize);
+            double gaussian = new Random(hash(index, 3)).nextGaussian();
+            size = Math.exp((logMin + logMax) / 2 + gaussian * (logMax - logMin) / 6);
+        }
+        return (int) Math.max(minBlobSize, Math.min(maxBlobSize, size));
+    }
+
+    /**
+     * Write a ZIM file with the current settings.
+     * @param file File to write, which will be overwritten if it exists.
+     */
+    public void generate(File file) throws IOException {
+        int totalEntryCount = entryCount + METADATA.length;
+        long mimeListPos;
+        long urlPtrPos;
+        long titlePtrPos;
+        long clusterPtrPos;
+        long[] clusterOffsets;
+        long checksumPos;
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try (ZimOutputStream out = new ZimOutputStream(new FileOutputStream(file))) {
+            out.write(new byte[ZimWriter.HEADER_SIZE]);
+
+            mimeListPos = out.getPosition();
+            out.writeString("text/html");
+            out.writeString("text/plain");
+            out.writeString("");
+
+            // Dirents follow the pointer lists, and their sizes are known up front.
+            urlPtrPos = out.getPosition();
+            long direntPos = urlPtrPos + (long) totalEntryCount * (ZimReader.BYTES_PER_LONG + ZimReader.BYTES_PER_INT);
+            for (int i = 0; i < totalEntryCount; i++) {
+                out.writeLongLe(direntPos);
+                direntPos += getDirentSize(i);
+            }
+
+            // Titles sort in the same order as URLs.
+            titlePtrPos = out.getPosition();
+            for (int i = 0; i < totalEntryCount; i++) {
+                out.writeIntLe(i);
+            }
+
+            ClusterAssigner assigner = new ClusterAssigner();
+            for (int i = 0; i < totalEntryCount; i++) {
+                if (i < entryCount && isRedirect(i)) {
+                    out.writeShortLe(DirectoryEntry.TYPE_REDIRECT);
+                    out.write(0);
+                    out.write('A');
+                    out.writeIntLe(0);
+                    out.writeIntLe(getRedirectTarget(i));
+                } else {
+                    assigner.add(getContentSize(i));
+                    out.writeShortLe(i < entryCount ? MIME_TYPE_HTML : MIME_TYPE_TEXT);
+                    out.write(0);
+                    out.write(i < entryCount ? 'A' : 'M');
+                    out.writeIntLe(0);
+                    out.writeIntLe(assigner.clusterNumber);
+                    out.writeIntLe(assigner.blobNumber);
+                }
+                writeEntryNames(out, i);
+            }
+
+            ClusterWriter clusterWriter = new ClusterWriter(out, lzmaOptions, pool);
+            assigner = new ClusterAssigner();
+            List<byte[]> blobs = new ArrayList<>();
+            for (int i = 0; i < totalEntryCount; i++) {
+                if (i < entryCount && isRedirect(i)) {
+                    continue;
+                }
+                int previousCluster = assigner.clusterNumber;
+                assigner.add(getContentSize(i));
+                if (assigner.clusterNumber != previousCluster) {
+                    clusterWriter.add(blobs);
+                    blobs = new ArrayList<>();
+                }
+                blobs.add(getContent(i));
+            }
+            clusterWriter.add(blobs);
+            clusterOffsets = clusterWriter.finish();
+
+            clusterPtrPos = out.getPosition();
+            for (long offset : clusterOffsets) {
+                out.writeLongLe(offset);
+            }
+            checksumPos = out.getPosition();
+        } finally {
+            pool.shutdown();
+        }
+
+        byte[] uuid = new byte[ZimWriter.UUID_SIZE];
+        new Random(seed).nextBytes(uuid);
+        // The first entry is never a redirect, so it serves as the main page.
+        ZimWriter.writeHeader(file, uuid, totalEntryCount, clusterOffsets.length, urlPtrPos, titlePtrPos,
+                clusterPtrPos, mimeListPos, 0, checksumPos);
+        ZimWriter.appendChecksum(file, checksumPos);
+    }
+
+    private int getDirentSize(int index) {
+        int size = (index < entryCount && isRedirect(index)) ? REDIRECT_DIRENT_SIZE : ARTICLE_DIRENT_SIZE;
+        if (index < entryCount) {
+            size += getUrl(index).length() + getTitle(index).length();
+        } else {
+            size += METADATA[index - entryCount][0].length();
+        }
+        // Null terminators of both strings.
+        return size + 2;
+    }
+
+    private void writeEntryNames(ZimOutputStream out, int index) throws IOException {
+        if (index < entryCount) {
+            out.writeString(getUrl(index));
+            out.writeString(getTitle(index));
+        } else {
+            out.writeString(METADATA[index - entryCount][0]);
+            out.writeString("");
+        }
+    }
+
+    private int getContentSize(int index) {
+        return index < entryCount ? getBlobSize(index) : METADATA[index - entryCount][1].length();
+    }
+
+    private byte[] getContent(int index) {
+        if (index >= entryCount) {
+            return METADATA[index - entryCount][1].getBytes(UTF_8);
+        }
+        int size = getBlobSize(index);
+        String head = "<html><head><title>" + getTitle(index) + "</title></head><body><p>";
+        String tail = "</p></body></html>";
+        StringBuilder sb = new StringBuilder(size + WORDS.length);
+        sb.append(head);
+        Random random = new Random(hash(index, 4));
+        while (sb.length() < size - tail.length()) {
+            sb.append(WORDS[random.nextInt(WORDS.length)].toLowerCase()).append(' ');
+        }
+        sb.setLength(Math.max(0, size - tail.length()));
+        sb.append(tail);
+        byte[] content = sb.toString().getBytes(UTF_8);
+        return content.length == size ? content : Arrays.copyOf(content, size);
+    }
+
+    private long hash(int index, int salt) {
+        // SplitMix64 finalizer, so that every (seed, index, salt) gets an independent value.
+        long z = seed + index * 0x9E3779B97F4A7C15L + salt * 0xD1B54A32D192ED03L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double toUnitInterval(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Assigns blobs to clusters in order, starting a new cluster when the current one is full.
+     */
+    private class ClusterAssigner {
+        int clusterNumber;
+        int blobNumber = -1;
+        private long clusterBytes;
+
+        void add(int blobSize) {
+            if (blobNumber >= 0 && clusterBytes + blobSize > clusterSize) {
+                clusterNumber++;
+                blobNumber = -1;
+                clusterBytes = 0;
+            }
+            blobNumber++;
+            clusterBytes += blobSize;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Custom stream type for reading data from a ZIM file.
+ * Copyright Dmitry Brant, 2017-2018.
+ *
+ * Loosely based on original implementation by Arunesh Mathur
+ */
+public class ZimInputStream extends BufferedInputStream {
+    private static final int TEMP_BUFFER_SIZE = 8;
+    private static final int STRING_BUFFER_SIZE = 256;
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[TEMP_BUFFER_SIZE];
+    private byte[] stringBuffer = new byte[STRING_BUFFER_SIZE];
+
+    // Position of the underlying file (or -1 until the first seek), and the file offset of the
+    // first byte of the internal buffer (or -1 if unknown), so that seeks can be served from the
+    // buffer.
+    private long filePos = -1;
+    private long bufferFilePos = -1;
+
+    private ZimMetrics metrics = ZimMetrics.NONE;
+
+    public ZimInputStream(FileInputStream fileStream) {
+        this(fileStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize Size of the internal buffer. Seeks that land within the buffered data
+     *                   don't touch the file, so a larger buffer serves more neighbouring
+     *                   reads, at the cost of reading more data after a seek that doesn't.
+     */
+    public ZimInputStream(FileInputStream fileStream, int bufferSize) {
+        this(fileStream, fileStream.getChannel(), bufferSize);
+    }
+
+    /**
+     * Read from a channel, e.g. one that is not backed by a single file, such as a
+     * {@link SplitFileChannel}. The channel is closed along with the stream.
+     */
+    public ZimInputStream(FileChannel channel, int bufferSize) {
+        this(new ChannelStream(channel), channel, bufferSize);
+    }
+
+    private ZimInputStream(InputStream source, FileChannel channel, int bufferSize) {
+        super(source, bufferSize);
+        this.channel = channel;
+        in = new PositionTrackingStream(source);
+    }
+
+    /**
+     * @param metrics Receives the number of bytes read from the file and of seeks.
+     */
+    void setMetrics(ZimMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public int readShortLe() throws IOException {
+        if (read(buffer, 0, 2) != 2) {
+            throw new IOException("Failed to read from stream.");
+        }
+        return ((buffer[0] & 0xFF) | ((buffer[1] & 0xFF) << 8));
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public int readIntLe() throws IOException {
+        if (read(buffer, 0, 4) != 4) {
+            throw new IOException("Failed to read from stream.");
+        }
+        return ((buffer[0] & 0xFF) | ((buffer[1] & 0xFF) << 8)
+                | ((buffer[2] & 0xFF) << 16) | ((buffer[3] & 0xFF) << 24));
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public long readLongLe() throws IOException {
+        if (read(buffer, 0, 8) != 8) {
+            throw new IOException("Failed to read from stream.");
+        }
+        return ((long)(buffer[0] & 0xFF) | ((long)(buffer[1] & 0xFF) << 8)
+                | ((long)(buffer[2] & 0xFF) << 16) | ((long)(buffer[3] & 0xFF) << 24)
+                | ((long)(buffer[4] & 0xFF) << 32) | ((long)(buffer[5] & 0xFF) << 40)
+                | ((long)(buffer[6] & 0xFF) << 48) | ((long)(buffer[7] & 0xFF) << 56));
+    }
+
+    /**
+     * Read a null-terminated UTF-8 string. The terminator is searched for directly in the
+     * internal buffer, and a string that is entirely buffered is decoded from there without
+     * copying. Strings that span a refill of the buffer are gathered in a reused scratch array.
+     */
+    public synchronized String readString() throws IOException {
+        if (buf == null) {
+            throw new IOException("Stream closed");
+        }
+        int length = 0;
+        while (true) {
+            if (pos >= count) {
+                // Let read() refill the buffer, and carry on scanning from there.
+                int b = read();
+                if (b < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+                if (b == 0) {
+                    break;
+                }
+                ensureStringBufferCapacity(length + 1);
+                stringBuffer[length++] = (byte) b;
+                continue;
+            }
+            int start = pos;
+            int end = start;
+            while (end < count && buf[end] != 0) {
+                end++;
+            }
+            if (end < count && length == 0) {
+                pos = end + 1;
+                return new String(buf, start, end - start, UTF_8);
+            }
+            ensureStringBufferCapacity(length + end - start);
+            System.arraycopy(buf, start, stringBuffer, length, end - start);
+            length += end - start;
+            if (end < count) {
+                pos = end + 1;
+                break;
+            }
+            pos = end;
+        }
+        return new String(stringBuffer, 0, length, UTF_8);
+    }
+
+    private void ensureStringBufferCapacity(int capacity) {
+        if (capacity > stringBuffer.length) {
+            stringBuffer = Arrays.copyOf(stringBuffer, Math.max(capacity, stringBuffer.length * 2));
+        }
+    }
+
+    public void seek(long pos) throws IOException {
+        if (bufferFilePos >= 0 && pos >= bufferFilePos && pos < bufferFilePos + count
+                && filePos == bufferFilePos + count) {
+            // The target is already buffered, and the file is positioned right after the buffered
+            // data (i.e. nothing has been read or skipped past the buffer since it was filled), so
+            // just move within the buffer.
+            this.pos = (int) (pos - bufferFilePos);
+            this.markpos = -1;
+            return;
+        }
+        channel.position(pos);
+        metrics.onSeek();
+        filePos = pos;
+        this.pos = 0;
+        this.count = 0;
+        this.markpos = -1;
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Passes reads through to the file, keeping track of the file position and of where in the
+     * file the data in the internal buffer came from. Reads into the internal buffer are fills;
+     * reads of large arrays bypass the buffer and leave its contents untouched.
+     */
+    private final class PositionTrackingStream extends FilterInputStream {
+        PositionTrackingStream(InputStream source) {
+            super(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                metrics.onFileRead(1);
+                if (filePos >= 0) {
+                    filePos++;
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (b == buf) {
+                bufferFilePos = filePos >= 0 ? filePos - off : -1;
+            }
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                metrics.onFileRead(n);
+                if (filePos >= 0) {
+                    filePos += n;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            if (filePos >= 0) {
+                filePos += skipped;
+            }
+            return skipped;
+        }
+    }
+
+    /**
+     * Reads from the current position of a channel.
+     */
+    private static final class ChannelStream extends InputStream {
+        private final FileChannel channel;
+
+        ChannelStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long pos = channel.position();
+            long skipped = Math.max(0, Math.min(n, channel.size() - pos));
+            channel.position(pos + skipped);
+            return skipped;
+        }
+
+        /**
+         * Like that of a file stream, so that reads of the buffered stream are filled up to
+         * the requested length.
+         */
+        @Override
+        public int available() throws IOException {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, channel.size() - channel.position()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
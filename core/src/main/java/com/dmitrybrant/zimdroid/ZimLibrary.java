@@ -0,0 +1,542 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A collection of ZIM files, with readers that are opened when they are needed and closed when
+ * they aren't, and that share a single {@link ZimCache}. However many files are added, the memory
+ * used for caching stays within the budget of the cache, and the number of files that are open
+ * without being in use stays within {@link #setMaxOpenReaders(int)}.
+ *
+ * A reader is borrowed with {@link #acquire(String)} and must be handed back with
+ * {@link #release(ZimReader)} when done with, after which it may be closed at any time:
+ *
+ * <pre>
+ * ZimLibrary library = new ZimLibrary(32 * 1024 * 1024);
+ * String id = library.add(file);
+ * ZimReader reader = library.acquire(id);
+ * try {
+ *     ...
+ * } finally {
+ *     library.release(reader);
+ * }
+ * </pre>
+ *
+ * This class is thread safe.
+ */
+public class ZimLibrary implements Closeable {
+    private static final int DEFAULT_MAX_OPEN_READERS = 8;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+    private static final int SEARCH_THREADS = 8;
+    private static final long SEARCH_KEEP_ALIVE_SECONDS = 30;
+    private static final long IDLE_TIMER_KEEP_ALIVE_SECONDS = 30;
+
+    private final ZimCache cache;
+    private final LinkedHashMap<String, Archive> archives = new LinkedHashMap<>();
+    // Files that were removed while their readers were in use.
+    private final List<Archive> removedArchives = new ArrayList<>();
+    private int maxOpenReaders = DEFAULT_MAX_OPEN_READERS;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private ExecutorService searchPool;
+    // Runs closeIdle() when the next reader times out, even if the library isn't used until then.
+    private ScheduledThreadPoolExecutor idleTimer;
+    private ScheduledFuture<?> idleCheck;
+    private long idleCheckTime;
+    private ZimMetrics metrics = ZimMetrics.NONE;
+    private boolean ownSearchPool;
+
+    /**
+     * @param cacheSize Size of the cache shared by all readers, in bytes.
+     */
+    public ZimLibrary(long cacheSize) {
+        cache = new ZimCache(cacheSize);
+    }
+
+    public ZimCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param count Number of readers that are kept open while not in use. Readers that are in
+     *              use are never closed, so more of them may be open. Defaults to 8.
+     */
+    public synchronized void setMaxOpenReaders(int count) {
+        maxOpenReaders = count;
+        closeIdle();
+    }
+
+    /**
+     * @param millis Time after which a reader that isn't in use is closed. Defaults to one minute.
+     */
+    public synchronized void setIdleTimeout(long millis) {
+        idleTimeoutMillis = millis;
+        closeIdle();
+    }
+
+    /**
+     * @param pool Executor on which files are searched, each in a task of its own. Defaults to
+     *             a pool of 8 threads owned by the library, since searching mostly waits for
+     *             the files to be read.
+     */
+    public synchronized void setSearchPool(ExecutorService pool) {
+        if (ownSearchPool) {
+            searchPool.shutdown();
+        }
+        searchPool = pool;
+        ownSearchPool = false;
+    }
+
+    /**
+     * @param metrics Receiver of the measurements of the shared cache and of all readers opened
+     *                from now on, see {@link ZimReader#setMetrics(ZimMetrics)}.
+     */
+    public synchronized void setMetrics(ZimMetrics metrics) {
+        this.metrics = metrics;
+        cache.setMetrics(metrics);
+    }
+
+    /**
+     * Add a ZIM file to the library. The file isn't opened until it is first acquired.
+     * @return Identifies the file in the library. Adding the same file again returns the same id.
+     */
+    public synchronized String add(File file) {
+        String id = file.getAbsolutePath();
+        if (!archives.containsKey(id)) {
+            archives.put(id, new Archive(file));
+        }
+        return id;
+    }
+
+    /**
+     * Remove a ZIM file from the library, along with its cached items. If its reader is in use,
+     * it is closed when released.
+     */
+    public synchronized void remove(String id) {
+        Archive archive = archives.remove(id);
+        if (archive == null) {
+            return;
+        }
+        // Items stay cached after the reader is closed, so they have to go even if it is.
+        if (archive.cacheOwner != null) {
+            cache.removeAll(archive.cacheOwner);
+        }
+        if (archive.reader != null) {
+            if (archive.refCount == 0) {
+                archive.close();
+            } else {
+                removedArchives.add(archive);
+            }
+        }
+    }
+
+    /**
+     * @return Ids of the files in the library, in the order they were added.
+     */
+    public synchronized List<String> getArchiveIds() {
+        return new ArrayList<>(archives.keySet());
+    }
+
+    /**
+     * @return Number of files that are currently open.
+     */
+    public synchronized int getOpenReaderCount() {
+        int count = 0;
+        for (Archive archive : archives.values()) {
+            if (archive.reader != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the reader of a file, opening the file if needed. The reader must be released with
+     * {@link #release(ZimReader)}, and may be used by several threads at the same time.
+     * @param id Id of the file, as returned by {@link #add(File)}.
+     */
+    public ZimReader acquire(String id) throws IOException {
+        Archive archive;
+        synchronized (this) {
+            archive = archives.get(id);
+            if (archive == null) {
+                throw new IllegalArgumentException("No such archive: " + id);
+            }
+            if (archive.reader != null) {
+                return borrow(archive);
+            }
+        }
+
+        // Open the file outside the lock, so that reading its header doesn't hold up the other
+        // files. Another thread may open the same file at the same time, which does no harm.
+        ZimReader reader = new ZimReader(new ZimFile(archive.file.getPath()), cache);
+        synchronized (this) {
+            if (archives.get(id) != archive) {
+                reader.close();
+                throw new IllegalArgumentException("No such archive: " + id);
+            }
+            if (archive.reader == null) {
+                archive.reader = reader;
+                archive.reader.setMetrics(metrics);
+                archive.cacheOwner = archive.reader.getCacheOwner();
+            } else {
+                reader.close();
+            }
+            return borrow(archive);
+        }
+    }
+
+    private ZimReader borrow(Archive archive) {
+        archive.refCount++;
+        archive.lastUsed = System.currentTimeMillis();
+        closeIdle();
+        return archive.reader;
+    }
+
+    /**
+     * Hand back a reader returned by {@link #acquire(String)}.
+     */
+    public synchronized void release(ZimReader reader) {
+        Archive archive = findArchive(archives.values(), reader);
+        if (archive == null) {
+            archive = findArchive(removedArchives, reader);
+            if (archive == null) {
+                throw new IllegalStateException("Reader was not acquired from this library.");
+            }
+            if (--archive.refCount == 0) {
+                archive.close();
+                removedArchives.remove(archive);
+            }
+            return;
+        }
+        if (archive.refCount <= 0) {
+            throw new IllegalStateException("Reader released more often than acquired.");
+        }
+        archive.refCount--;
+        archive.lastUsed = System.currentTimeMillis();
+        closeIdle();
+    }
+
+    private static Archive findArchive(Iterable<Archive> candidates, ZimReader reader) {
+        for (Archive archive : candidates) {
+            if (archive.reader == reader) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the articles whose titles start with the given prefix, across all files in the
+     * library. The files are searched in parallel, and their results are merged in title order,
+     * so this takes about as long as searching the slowest file. Results with the same title
+     * are ordered as their files were added. Each file is still searched for up to maxResults
+     * titles, since any one of them might hold all of the first results.
+     *
+     * A file that can't be searched, e.g. because it is damaged or has gone missing, contributes
+     * no results, so that it doesn't hide the results of the other files. Only if no file could
+     * be searched is the failure thrown.
+     * @param prefix Start of the titles to find. The first letter is capitalized, as in titles.
+     * @param maxResults Maximum number of results to return, in total.
+     */
+    public List<SearchResult> searchByPrefix(final String prefix, final int maxResults) throws IOException {
+        final List<String> ids = getArchiveIds();
+        ExecutorService pool = getSearchPool();
+        List<Future<List<DirectoryEntry>>> futures = new ArrayList<>();
+        for (final String id : ids) {
+            futures.add(pool.submit(new Callable<List<DirectoryEntry>>() {
+                @Override
+                public List<DirectoryEntry> call() throws IOException {
+                    ZimReader reader;
+                    try {
+                        reader = acquire(id);
+                    } catch (IllegalArgumentException e) {
+                        // Removed since the search started.
+                        return Collections.emptyList();
+                    }
+                    try {
+                        // No file can contribute more than the total number of results.
+                        return reader.searchEntriesByPrefix(prefix, maxResults);
+                    } finally {
+                        release(reader);
+                    }
+                }
+            }));
+        }
+
+        PriorityQueue<ResultCursor> heap = new PriorityQueue<>(Math.max(1, ids.size()));
+        IOException failure = null;
+        int failureCount = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                List<DirectoryEntry> entries;
+                try {
+                    entries = waitFor(futures.get(i));
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    failureCount++;
+                    continue;
+                }
+                if (!entries.isEmpty()) {
+                    heap.add(new ResultCursor(i, ids.get(i), entries));
+                }
+            }
+        } finally {
+            for (Future<List<DirectoryEntry>> future : futures) {
+                future.cancel(false);
+            }
+        }
+
+        if (failure != null && failureCount == futures.size()) {
+            throw failure;
+        }
+
+        List<SearchResult> results = new ArrayList<>();
+        while (results.size() < maxResults && !heap.isEmpty()) {
+            ResultCursor cursor = heap.poll();
+            results.add(new SearchResult(cursor.archiveId, cursor.current()));
+            if (++cursor.position < cursor.entries.size()) {
+                heap.add(cursor);
+            }
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService getSearchPool() {
+        if (searchPool == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(SEARCH_THREADS, SEARCH_THREADS,
+                    SEARCH_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("search"));
+            pool.allowCoreThreadTimeOut(true);
+            searchPool = pool;
+            ownSearchPool = true;
+        }
+        return searchPool;
+    }
+
+    private static List<DirectoryEntry> waitFor(Future<List<DirectoryEntry>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to search archive.", e.getCause());
+        }
+    }
+
+    /**
+     * Close the readers that haven't been used for longer than the idle timeout, and then the
+     * least recently used ones until no more than the maximum number of idle readers are open.
+     * This is done whenever a reader is acquired or released, but can also be called at other
+     * times, e.g. when the system is low on memory.
+     */
+    public synchronized void closeIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+        List<Archive> idle = new ArrayList<>();
+        for (Archive archive : archives.values()) {
+            if (archive.reader != null && archive.refCount == 0) {
+                if (archive.lastUsed <= idleSince) {
+                    archive.close();
+                } else {
+                    idle.add(archive);
+                }
+            }
+        }
+        while (idle.size() > maxOpenReaders) {
+            Archive leastRecent = idle.get(0);
+            for (Archive archive : idle) {
+                if (archive.lastUsed < leastRecent.lastUsed) {
+                    leastRecent = archive;
+                }
+            }
+            leastRecent.close();
+            idle.remove(leastRecent);
+        }
+        scheduleIdleCheck(idle);
+    }
+
+    /**
+     * Make sure that {@link #closeIdle()} runs again when the first of the given open readers
+     * times out.
+     */
+    private void scheduleIdleCheck(List<Archive> idle) {
+        if (idle.isEmpty()) {
+            return;
+        }
+        long leastRecentUse = Long.MAX_VALUE;
+        for (Archive archive : idle) {
+            leastRecentUse = Math.min(leastRecentUse, archive.lastUsed);
+        }
+        long now = System.currentTimeMillis();
+        long delay = Math.max(0, idleTimeoutMillis - (now - leastRecentUse));
+        long time = delay < Long.MAX_VALUE - now ? now + delay : Long.MAX_VALUE;
+        if (idleCheck != null) {
+            if (idleCheckTime <= time) {
+                return;
+            }
+            idleCheck.cancel(false);
+        }
+        if (idleTimer == null) {
+            idleTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("idle timer"));
+            idleTimer.setKeepAliveTime(IDLE_TIMER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            idleTimer.allowCoreThreadTimeOut(true);
+        }
+        idleCheckTime = time;
+        idleCheck = idleTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ZimLibrary.this) {
+                    idleCheck = null;
+                    closeIdle();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close all readers and remove all files from the library. Readers that are still in use
+     * are closed as well.
+     */
+    @Override
+    public synchronized void close() {
+        for (Archive archive : archives.values()) {
+            archive.close();
+        }
+        for (Archive archive : removedArchives) {
+            archive.close();
+        }
+        archives.clear();
+        removedArchives.clear();
+        cache.clear();
+        if (ownSearchPool) {
+            searchPool.shutdown();
+            searchPool = null;
+            ownSearchPool = false;
+        }
+        if (idleTimer != null) {
+            idleTimer.shutdownNow();
+            idleTimer = null;
+            idleCheck = null;
+        }
+    }
+
+    /**
+     * An article found by {@link #searchByPrefix(String, int)}, and the file it was found in.
+     */
+    public static final class SearchResult {
+        private final String archiveId;
+        private final DirectoryEntry entry;
+
+        SearchResult(String archiveId, DirectoryEntry entry) {
+            this.archiveId = archiveId;
+            this.entry = entry;
+        }
+
+        /**
+         * @return Id of the file, as returned by {@link #add(File)}.
+         */
+        public String getArchiveId() {
+            return archiveId;
+        }
+
+        public DirectoryEntry getEntry() {
+            return entry;
+        }
+
+        public String getTitle() {
+            return entry.getTitle();
+        }
+    }
+
+    /**
+     * The results of one file that haven't been merged yet.
+     */
+    private static final class ResultCursor implements Comparable<ResultCursor> {
+        final int archiveIndex;
+        final String archiveId;
+        final List<DirectoryEntry> entries;
+        int position;
+
+        ResultCursor(int archiveIndex, String archiveId, List<DirectoryEntry> entries) {
+            this.archiveIndex = archiveIndex;
+            this.archiveId = archiveId;
+            this.entries = entries;
+        }
+
+        DirectoryEntry current() {
+            return entries.get(position);
+        }
+
+        @Override
+        public int compareTo(ResultCursor other) {
+            int result = current().getTitle().compareTo(other.current().getTitle());
+            return result != 0 ? result : Integer.compare(archiveIndex, other.archiveIndex);
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ZimLibrary " + name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class Archive {
+        final File file;
+        ZimReader reader;
+        String cacheOwner;
+        int refCount;
+        long lastUsed;
+
+        Archive(File file) {
+            this.file = file;
+        }
+
+        void close() {
+            if (reader == null) {
+                return;
+            }
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            reader = null;
+        }
+    }
+}
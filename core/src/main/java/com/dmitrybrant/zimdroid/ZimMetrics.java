@@ -0,0 +1,119 @@
+package com.dmitrybrant.zimdroid;
+
+/**
+ * Receives measurements of what a {@link ZimReader} does internally, to find out why lookups
+ * are slow and how well caches of a given size work. See {@link ZimReader#setMetrics(ZimMetrics)}.
+ *
+ * Methods are called on whichever thread is using the reader, often while holding the reader's
+ * lock, so implementations must be thread safe and quick. {@link InMemoryZimMetrics} collects
+ * everything into counters and histograms.
+ */
+public interface ZimMetrics {
+    int CACHE_URL_ENTRY = 0;
+    int CACHE_TITLE_ENTRY = 1;
+    int CACHE_CLUSTER = 2;
+
+    int LOOKUP_URL = 0;
+    int LOOKUP_TITLE = 1;
+
+    /**
+     * Does nothing. This is the default.
+     */
+    ZimMetrics NONE = new ZimMetrics() {
+        @Override
+        public void onCacheHit(int cache) {
+        }
+
+        @Override
+        public void onCacheMiss(int cache) {
+        }
+
+        @Override
+        public void onCacheEviction(int cache, long size) {
+        }
+
+        @Override
+        public void onLookup(int list, String key, int probes, long nanos) {
+        }
+
+        @Override
+        public void onFileRead(long bytes) {
+        }
+
+        @Override
+        public void onSeek() {
+        }
+
+        @Override
+        public void onClusterDecoded(int clusterNumber, int compressionType, long compressedBytes,
+                                     long bytes, long nanos) {
+        }
+
+        @Override
+        public void onBlobSkip(long bytes) {
+        }
+
+        @Override
+        public void onRedirect(int hops) {
+        }
+    };
+
+    /**
+     * A directory entry or decoded cluster was found in a cache.
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     */
+    void onCacheHit(int cache);
+
+    /**
+     * A directory entry or decoded cluster was not found in a cache, and had to be read.
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     */
+    void onCacheMiss(int cache);
+
+    /**
+     * An item was evicted from a {@link ZimCache} to make room for another.
+     * @param cache One of {@link #CACHE_URL_ENTRY}, {@link #CACHE_TITLE_ENTRY} and {@link #CACHE_CLUSTER}.
+     * @param size Estimated size of the item, in bytes.
+     */
+    void onCacheEviction(int cache, long size);
+
+    /**
+     * A binary search of the URL or title list finished.
+     * @param list Either {@link #LOOKUP_URL} or {@link #LOOKUP_TITLE}.
+     * @param key The URL or title searched for.
+     * @param probes Number of directory entries looked at.
+     * @param nanos Time taken.
+     */
+    void onLookup(int list, String key, int probes, long nanos);
+
+    /**
+     * Data was read from the file, as opposed to from a buffer.
+     */
+    void onFileRead(long bytes);
+
+    /**
+     * Reading jumped to a different position in the file.
+     */
+    void onSeek();
+
+    /**
+     * A compressed cluster was decoded, as far as needed. Not called for content read through
+     * {@link ZimReader#getStreamForEntry(DirectoryEntry)}, which is decoded as it's read.
+     * @param compressedBytes Size of the cluster in the file.
+     * @param bytes Number of decoded bytes.
+     * @param nanos Time taken.
+     */
+    void onClusterDecoded(int clusterNumber, int compressionType, long compressedBytes, long bytes, long nanos);
+
+    /**
+     * Data in a cluster was skipped to get to a blob. In a compressed cluster, the skipped data
+     * has to be decoded all the same.
+     */
+    void onBlobSkip(long bytes);
+
+    /**
+     * Redirects were followed to get to the content of an entry.
+     * @param hops Number of redirects followed.
+     */
+    void onRedirect(int hops);
+}
@@ -0,0 +1,69 @@
+package com.dmitrybrant.zimdroid;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Custom stream type for writing data to a ZIM file. Keeps track of the number of bytes written,
+ * so that the positions of the various sections can be recorded in the header.
+ */
+public class ZimOutputStream extends BufferedOutputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TEMP_BUFFER_SIZE = 8;
+
+    private final byte[] buffer = new byte[TEMP_BUFFER_SIZE];
+    private long position;
+
+    public ZimOutputStream(OutputStream out) {
+        super(out, BUFFER_SIZE);
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        super.write(b);
+        position++;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        position += len;
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public void writeShortLe(int value) throws IOException {
+        buffer[0] = (byte) value;
+        buffer[1] = (byte) (value >>> 8);
+        write(buffer, 0, 2);
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public void writeIntLe(int value) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            buffer[i] = (byte) (value >>> (i * 8));
+        }
+        write(buffer, 0, 4);
+    }
+
+    @SuppressWarnings("checkstyle:magicnumber")
+    public void writeLongLe(long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (i * 8));
+        }
+        write(buffer, 0, 8);
+    }
+
+    /**
+     * Write the given string as null-terminated UTF-8, as read by {@link ZimInputStream#readString()}.
+     */
+    public void writeString(String str) throws IOException {
+        byte[] bytes = str.getBytes("utf-8");
+        write(bytes, 0, bytes.length);
+        write(0);
+    }
+}
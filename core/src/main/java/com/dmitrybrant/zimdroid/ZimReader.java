@@ -0,0 +1,843 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Reads content and metadata from a ZIM file.
+ * Copyright Dmitry Brant, 2017-2018.
+ *
+ * Loosely based on original implementation by Arunesh Mathur
+ */
+public class ZimReader implements Closeable {
+    private static final char NAMESPACE_ARTICLE = 'A';
+    private static final char NAMESPACE_MEDIA = 'I';
+    private static final char NAMESPACE_META = 'M';
+
+    static final int COMPRESSION_TYPE_NONE = 0;
+    static final int COMPRESSION_TYPE_NONE_OLD = 1;
+    static final int COMPRESSION_TYPE_LZMA = 4;
+    static final int BYTES_PER_INT = 4;
+    static final int BYTES_PER_LONG = 8;
+    // Room for a few hundred directory entries of each list.
+    private static final int DEFAULT_CACHE_SIZE = 128 * 1024;
+    // Rough memory overhead of cached objects, for the budget of the cache.
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int ITEM_OVERHEAD = 16;
+
+    private ZimFile zimFile;
+    private FileChannel channel;
+    private ZimInputStream inputStream;
+
+    private final ZimCache cache;
+    private final boolean cacheClusters;
+    private final String cacheOwner;
+    private int lzmaDictSize;
+    private boolean verifyChecks = true;
+    private ZimMetrics metrics = ZimMetrics.NONE;
+
+    private String zimTitle;
+    private String zimDescription;
+    private Date zimDate;
+
+    private int firstArticleTitleIndex = -1;
+    private int lastArticleTitleIndex = -1;
+
+    /**
+     * Construct a ZIM reader that operates on the given ZIM file, with a small cache of directory
+     * entries of its own.
+     * @param file ZIM file from which to read content.
+     */
+    public ZimReader(ZimFile file) {
+        this(file, new ZimCache(DEFAULT_CACHE_SIZE), false);
+    }
+
+    /**
+     * Construct a ZIM reader that keeps directory entries and decompressed clusters in the given
+     * cache, which may be shared with the readers of other files, instead of a cache of its own.
+     * Items stay in the cache after the reader is closed, for the next reader of the same file.
+     * @param file ZIM file from which to read content.
+     * @param cache Cache shared by any number of readers.
+     */
+    public ZimReader(ZimFile file, ZimCache cache) {
+        this(file, cache, true);
+    }
+
+    /**
+     * @param cacheClusters Whether to decode compressed clusters as a whole and cache them, as
+     *                      opposed to decoding only as far as the requested blob every time.
+     */
+    private ZimReader(ZimFile file, ZimCache cache, boolean cacheClusters) {
+        zimFile = file;
+        this.cache = cache;
+        this.cacheClusters = cacheClusters;
+        // Tell apart different files at the same path, e.g. after an update.
+        cacheOwner = file.getAbsolutePath() + "/" + Util.toHex(file.getUuid());
+        try {
+            inputStream = zimFile.openInputStream(ZimInputStream.DEFAULT_BUFFER_SIZE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+        synchronized (this) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    public ZimFile getZimFile() {
+        return zimFile;
+    }
+
+    /**
+     * @return Identifies the items of this reader's file in its cache.
+     */
+    String getCacheOwner() {
+        return cacheOwner;
+    }
+
+    /**
+     * Set the dictionary size that will be used by the LZMA decoder. This is useful for
+     * constraining the decoder's memory usage in environments with very little memory, e.g.
+     * Android devices with a small Java VM size.  The tradeoff is that if a custom dictionary
+     * size is set, it will not be possible to decode chunks of data whose uncompressed size
+     * is larger than the dictionary size.
+     * @param dictSize If this is set to 0, the decoder will use the default dictionary size that is
+     *                 dictated by the actual file that's being processed. Otherwise, the specified
+     *                 size will be used.
+     */
+    public void setLzmaDictSize(int dictSize) {
+        lzmaDictSize = dictSize;
+    }
+
+    /**
+     * Set the size of the buffer used for reading directory entries and cluster headers. Seeks
+     * that land within the buffered data are served without touching the file, so a larger
+     * buffer helps sequential scans of the directory, while a smaller one reads less data for
+     * lookups that jump around the file.
+     * @param bufferSize Size of the buffer in bytes. Defaults to
+     *                   {@link ZimInputStream#DEFAULT_BUFFER_SIZE}.
+     */
+    public synchronized void setBufferSize(int bufferSize) throws IOException {
+        ZimInputStream stream = zimFile.openInputStream(bufferSize);
+        stream.setMetrics(metrics);
+        if (inputStream != null) {
+            inputStream.close();
+        }
+        inputStream = stream;
+    }
+
+    /**
+     * Set whether the integrity checks of compressed clusters (the XZ block check and index
+     * hash) are verified when reading content. Disabling this saves a CRC64 or SHA-256 pass
+     * over every decompressed cluster, and should only be done for ZIM files whose integrity
+     * has already been established, e.g. with {@link ZimVerifier} when the file was installed.
+     * @param verify Whether to verify integrity checks. Defaults to true.
+     */
+    public void setVerifyChecks(boolean verify) {
+        verifyChecks = verify;
+    }
+
+    /**
+     * Report measurements of cache use, lookups, file reads and cluster decoding, e.g. to an
+     * {@link InMemoryZimMetrics}. This should be set before the reader is used.
+     * @param metrics Receiver of the measurements. Defaults to {@link ZimMetrics#NONE}.
+     */
+    public synchronized void setMetrics(ZimMetrics metrics) {
+        this.metrics = metrics;
+        if (inputStream != null) {
+            inputStream.setMetrics(metrics);
+        }
+    }
+
+    public String getZimTitle() throws IOException {
+        if (zimTitle == null || zimTitle.length() == 0) {
+            ByteArrayOutputStream stream = getDataForMetaTag("Title");
+            zimTitle = stream != null ? stream.toString("utf-8") : "";
+        }
+        return zimTitle;
+    }
+
+    public String getZimDescription() throws IOException {
+        if (zimDescription == null || zimDescription.length() == 0) {
+            ByteArrayOutputStream stream = getDataForMetaTag("Description");
+            if (stream != null) {
+                zimDescription = stream.toString("utf-8");
+            } else {
+                stream = getDataForMetaTag("Subtitle");
+                zimDescription = stream != null ? stream.toString("utf-8") : "";
+            }
+        }
+        return zimDescription;
+    }
+
+    public Date getZimDate() {
+        if (zimDate == null) {
+            try {
+                ByteArrayOutputStream stream = getDataForMetaTag("Date");
+                String dateStr = stream != null ? stream.toString("utf-8") : "";
+                zimDate = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT).parse(dateStr);
+            } catch (IOException e) {
+                // Keep our internal date null, so we'll try again next time.
+            } catch (ParseException e) {
+                // The date string is actually malformed, so give up.
+                zimDate = new Date(zimFile.lastModified());
+            }
+        }
+        return zimDate != null ? zimDate : new Date(zimFile.lastModified());
+    }
+
+    public String getRandomTitle() throws IOException {
+        int first = getFirstArticleTitleIndex();
+        int last = getLastArticleTitleIndex();
+        int index = first + new Random().nextInt(last - first);
+        DirectoryEntry entry = resolveRedirect(getDirectoryEntryAtTitlePosition(index));
+        return entry.getTitle();
+    }
+
+    public String getMainPageTitle() throws IOException {
+        return getMainPageEntry().getTitle();
+    }
+
+    /**
+     * @return The directory entry of the main page, which may be a redirect.
+     */
+    public DirectoryEntry getMainPageEntry() throws IOException {
+        if (zimFile.getMainPage() < 0) {
+            throw new IOException("The ZIM file does not contain a main page.");
+        }
+        return getDirectoryEntryAtUrlPosition(zimFile.getMainPage());
+    }
+
+    public List<String> searchByPrefix(String prefix, int maxResults) throws IOException {
+        List<String> results = new ArrayList<>();
+        prefix = Util.capitalize(prefix);
+        DirectoryEntry entry = binarySearchByTitle(NAMESPACE_ARTICLE, prefix, true);
+        if (entry == null) {
+            return results;
+        }
+        int index = entry.getTitleListIndex();
+        if (index < 0) {
+            index = 0;
+        }
+
+        for (int i = 0; i < maxResults; i++) {
+            entry = getDirectoryEntryAtTitlePosition(index);
+
+            if (entry.getTitle().startsWith(prefix)) {
+                results.add(entry.getTitle());
+            }
+
+            index++;
+            if (index >= zimFile.getArticleCount()) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the articles whose titles start with the given prefix, in title order. Unlike
+     * {@link #searchByPrefix(String, int)}, this returns exactly the first matches, so that the
+     * results of several files can be merged in order.
+     * @param prefix Start of the titles to find. The first letter is capitalized, as in titles.
+     * @param maxResults Maximum number of entries to return.
+     */
+    public List<DirectoryEntry> searchEntriesByPrefix(String prefix, int maxResults) throws IOException {
+        List<DirectoryEntry> results = new ArrayList<>();
+        prefix = Util.capitalize(prefix);
+        int articleCount = zimFile.getArticleCount();
+        for (int index = findFirstTitlePosition(NAMESPACE_ARTICLE, prefix);
+             index < articleCount && results.size() < maxResults; index++) {
+            DirectoryEntry entry = getDirectoryEntryAtTitlePosition(index);
+            if (entry.getNamespace() != NAMESPACE_ARTICLE || !entry.getTitle().startsWith(prefix)) {
+                break;
+            }
+            results.add(entry);
+        }
+        return results;
+    }
+
+    public String getNormalizedTitle(String title) throws IOException {
+        DirectoryEntry entry = binarySearchByTitle(NAMESPACE_ARTICLE, Util.capitalize(title), false);
+        if (entry == null) {
+            return null;
+        }
+        return resolveRedirect(entry).getTitle();
+    }
+
+    /**
+     * Look up the directory entry for the given URL, without retrieving its content.
+     * @param url URL of the entry, optionally prefixed with its namespace, e.g. "I/m/image.jpg".
+     * @return The entry, which may be a redirect, or null if there is no such URL.
+     */
+    public DirectoryEntry getEntryForUrl(String url) throws IOException {
+        String[] urlParts = url.split("/");
+        if (urlParts.length > 0 && urlParts[0].length() > 0 && url.length() > (urlParts[0].length() + 1)) {
+            return binarySearchByUrl(urlParts[0].charAt(0),
+                    url.substring(urlParts[0].length() + 1), false);
+        } else {
+            return binarySearchByUrl(NAMESPACE_ARTICLE, url, false);
+        }
+    }
+
+    /**
+     * Look up the directory entry for the given article title, without retrieving its content.
+     * @param title Exact title of the article.
+     * @return The entry, which may be a redirect, or null if there is no such title.
+     */
+    public DirectoryEntry getEntryForTitle(String title) throws IOException {
+        return binarySearchByTitle(NAMESPACE_ARTICLE, title, false);
+    }
+
+    /**
+     * Get the MIME type of the content of the given entry, following redirects, from the MIME
+     * type list of the file. This only reads directory entries, never content.
+     * @param entry Entry whose MIME type to get, as returned by {@link #getEntryForUrl(String)}.
+     * @return The MIME type, or null if the entry's MIME type index is not valid.
+     */
+    public String getMimeTypeForEntry(DirectoryEntry entry) throws IOException {
+        int mimeType = resolveRedirect(entry).getMimeType();
+        if (mimeType < 0 || mimeType >= zimFile.getMIMETypeCount()) {
+            return null;
+        }
+        return zimFile.getMIMEType(mimeType);
+    }
+
+    public ByteArrayOutputStream getDataForUrl(String url) throws IOException {
+        return getData(getEntryForUrl(url));
+    }
+
+    public ByteArrayOutputStream getDataForTitle(String title) throws IOException {
+        return getData(getEntryForTitle(title));
+    }
+
+    /**
+     * Open a stream over the content of the given entry, following redirects. The content is
+     * decoded as the stream is read rather than all at once, and the stream reads the file
+     * independently of this reader, so several streams can be read at the same time, on
+     * different threads, without holding up other calls on this reader.
+     * @param entry Entry whose content to read, as returned by {@link #getEntryForUrl(String)}.
+     */
+    public InputStream getStreamForEntry(DirectoryEntry entry) throws IOException {
+        ArticleEntry article = (ArticleEntry) resolveRedirect(entry);
+        long clusterPos = getClusterPosition(article.getClusterNumber());
+        if (cacheClusters) {
+            byte[] blob = getCachedBlob(article.getClusterNumber(), clusterPos, article.getBlobNumber());
+            if (blob != null) {
+                return new ByteArrayInputStream(blob);
+            }
+        }
+        SingleXZInputStream.setLZMA2DictSize(lzmaDictSize);
+        metrics.onSeek();
+        return ClusterDecoder.openBlob(new ChannelInputStream(getChannel(), clusterPos, metrics),
+                article.getBlobNumber(), verifyChecks, metrics);
+    }
+
+    /**
+     * Find where the content of the given entry is stored in the file, following redirects, if it
+     * is stored uncompressed. Such content can be read straight from the file, e.g. by handing
+     * out a file descriptor for just that region.
+     * @param entry Entry whose content to locate, as returned by {@link #getEntryForUrl(String)}.
+     * @return The region of the file holding the content, or null if the content is compressed,
+     *         or split across two parts of a split file.
+     */
+    public synchronized BlobRegion getBlobRegion(DirectoryEntry entry) throws IOException {
+        ArticleEntry article = (ArticleEntry) resolveRedirect(entry);
+        long clusterPos = getClusterPosition(article.getClusterNumber());
+        inputStream.seek(clusterPos);
+        int compressionType = inputStream.read();
+        if (compressionType != COMPRESSION_TYPE_NONE && compressionType != COMPRESSION_TYPE_NONE_OLD) {
+            return null;
+        }
+        int blobNumber = article.getBlobNumber();
+        int firstOffset = inputStream.readIntLe();
+        if (blobNumber >= firstOffset / BYTES_PER_INT - 1) {
+            throw new IOException("Blob number greater than total blobs.");
+        }
+        int offset1 = firstOffset;
+        if (blobNumber > 0) {
+            Util.skipFully(inputStream, (long)(blobNumber - 1) * BYTES_PER_INT);
+            offset1 = inputStream.readIntLe();
+        }
+        int offset2 = inputStream.readIntLe();
+        if (offset2 < offset1) {
+            throw new IOException("Invalid cluster offset table.");
+        }
+        // Offsets are relative to the end of the compression type byte.
+        long offset = clusterPos + 1 + offset1;
+        int length = offset2 - offset1;
+        int part = zimFile.findPart(offset, length);
+        if (part < 0) {
+            return null;
+        }
+        return new BlobRegion(zimFile.getParts()[part], offset - zimFile.getPartPosition(part), length);
+    }
+
+    private ByteArrayOutputStream getDataForMetaTag(String title) throws IOException {
+        return getData(binarySearchByTitle(NAMESPACE_META, title, false));
+    }
+
+    private synchronized ByteArrayOutputStream getData(DirectoryEntry entry) throws IOException {
+        if (entry == null) {
+            return null;
+        }
+        entry = resolveRedirect(entry);
+
+        int clusterNumber = ((ArticleEntry) entry).getClusterNumber();
+        int blobNumber = ((ArticleEntry) entry).getBlobNumber();
+
+        inputStream.seek(zimFile.getClusterPtrPos() + (long)clusterNumber * BYTES_PER_LONG);
+
+        long clusterPos = inputStream.readLongLe();
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        byte[] buffer;
+
+        if (cacheClusters) {
+            buffer = getCachedBlob(clusterNumber, clusterPos, blobNumber);
+            if (buffer != null) {
+                outStream.write(buffer, 0, buffer.length);
+                return outStream;
+            }
+        }
+
+        inputStream.seek(clusterPos);
+
+        int compressionType = inputStream.read();
+
+        SingleXZInputStream xzReader;
+        int firstOffset, numberOfBlobs, offset1, offset2, location, differenceOffset;
+
+        // Check the compression type that was read
+        switch (compressionType) {
+
+            case COMPRESSION_TYPE_NONE:
+            case COMPRESSION_TYPE_NONE_OLD:
+
+                firstOffset = inputStream.readIntLe();
+                numberOfBlobs = firstOffset / BYTES_PER_INT;
+
+                if (blobNumber >= numberOfBlobs) {
+                    throw new IOException("Blob number greater than total blobs.");
+                }
+
+                if (blobNumber == 0) {
+                    // The first offset is what we read earlier
+                    offset1 = firstOffset;
+                } else {
+                    location = (blobNumber - 1) * BYTES_PER_INT;
+                    Util.skipFully(inputStream, location);
+                    offset1 = inputStream.readIntLe();
+                }
+
+                offset2 = inputStream.readIntLe();
+
+                differenceOffset = offset2 - offset1;
+                buffer = new byte[differenceOffset];
+
+                Util.skipFully(inputStream, (offset1 - (long)BYTES_PER_INT * (blobNumber + 2)));
+                metrics.onBlobSkip(offset1 - (long)BYTES_PER_INT * (blobNumber + 2)
+                        + (long)BYTES_PER_INT * Math.max(0, blobNumber - 1));
+
+                inputStream.read(buffer, 0, differenceOffset);
+                outStream.write(buffer, 0, differenceOffset);
+                break;
+
+            case COMPRESSION_TYPE_LZMA:
+
+                long decodeStart = System.nanoTime();
+                SingleXZInputStream.setLZMA2DictSize(lzmaDictSize);
+                xzReader = new SingleXZInputStream(inputStream, -1, verifyChecks);
+
+                buffer = new byte[BYTES_PER_INT];
+                xzReader.read(buffer);
+
+                firstOffset = Util.getIntLe(buffer);
+                numberOfBlobs = firstOffset / BYTES_PER_INT;
+
+                if (blobNumber >= numberOfBlobs) {
+                    throw new IOException("Blob number greater than total blobs.");
+                }
+
+                if (blobNumber == 0) {
+                    offset1 = firstOffset;
+                } else {
+                    location = (blobNumber - 1) * BYTES_PER_INT;
+                    Util.skipFully(xzReader, location);
+                    xzReader.read(buffer);
+                    offset1 = Util.getIntLe(buffer);
+                }
+
+                xzReader.read(buffer);
+                offset2 = Util.getIntLe(buffer);
+
+                differenceOffset = offset2 - offset1;
+                buffer = new byte[differenceOffset];
+
+                Util.skipFully(xzReader, (offset1 - (long)BYTES_PER_INT * (blobNumber + 2)));
+                metrics.onBlobSkip(offset1 - (long)BYTES_PER_INT * (blobNumber + 2)
+                        + (long)BYTES_PER_INT * Math.max(0, blobNumber - 1));
+
+                xzReader.read(buffer, 0, differenceOffset);
+                outStream.write(buffer, 0, differenceOffset);
+                reportClusterDecoded(clusterNumber, clusterPos, compressionType, offset2, decodeStart);
+                break;
+
+            default:
+                break;
+        }
+        return outStream;
+    }
+
+    /**
+     * Get a blob out of the cache, decoding its whole cluster and adding it to the cache
+     * if it isn't cached yet. Only compressed clusters are cached, since blobs of uncompressed
+     * ones can be read straight from the file.
+     * @return The blob, or null if the cluster isn't compressed.
+     */
+    private byte[] getCachedBlob(int clusterNumber, long clusterPos, int blobNumber) throws IOException {
+        byte[][] blobs = (byte[][]) cache.get(cacheOwner, ZimCache.KIND_CLUSTER, clusterNumber);
+        if (blobs != null) {
+            metrics.onCacheHit(ZimMetrics.CACHE_CLUSTER);
+        } else {
+            ByteBuffer type = ByteBuffer.allocate(1);
+            if (getChannel().read(type, clusterPos) != 1) {
+                throw new IOException("Failed to read from stream.");
+            }
+            int compressionType = type.get(0);
+            if (compressionType == COMPRESSION_TYPE_NONE || compressionType == COMPRESSION_TYPE_NONE_OLD) {
+                return null;
+            }
+            metrics.onCacheMiss(ZimMetrics.CACHE_CLUSTER);
+            // Streams decode without holding the reader's lock, so two threads may decode the
+            // same cluster at the same time, which does no harm.
+            long decodeStart = System.nanoTime();
+            SingleXZInputStream.setLZMA2DictSize(lzmaDictSize);
+            metrics.onSeek();
+            blobs = ClusterDecoder.decode(new ChannelInputStream(getChannel(), clusterPos, metrics), verifyChecks,
+                    zimFile.length() - clusterPos);
+            long decodedBytes = 0;
+            for (byte[] blob : blobs) {
+                decodedBytes += blob.length;
+            }
+            reportClusterDecoded(clusterNumber, clusterPos, compressionType, decodedBytes, decodeStart);
+            long size = ITEM_OVERHEAD + decodedBytes + (long) ITEM_OVERHEAD * blobs.length;
+            cache.put(cacheOwner, ZimCache.KIND_CLUSTER, clusterNumber, blobs, size);
+        }
+        if (blobNumber >= blobs.length) {
+            throw new IOException("Blob number greater than total blobs.");
+        }
+        return blobs[blobNumber];
+    }
+
+    private void reportClusterDecoded(int clusterNumber, long clusterPos, int compressionType, long bytes,
+                                      long decodeStart) throws IOException {
+        long nanos = System.nanoTime() - decodeStart;
+        if (metrics == ZimMetrics.NONE) {
+            // Don't look up the size of the cluster for nothing.
+            return;
+        }
+        // Clusters are stored in order, up to the checksum at the end of the file. The pointer to
+        // the next cluster is read straight from the channel, so that looking it up neither takes
+        // the reader's lock nor counts as a read or seek of its own.
+        long clusterEnd;
+        if (clusterNumber + 1 < zimFile.getClusterCount()) {
+            ByteBuffer pointer = ByteBuffer.allocate(BYTES_PER_LONG);
+            long pointerPos = zimFile.getClusterPtrPos() + (long) (clusterNumber + 1) * BYTES_PER_LONG;
+            FileChannel channel = getChannel();
+            while (pointer.hasRemaining()) {
+                if (channel.read(pointer, pointerPos + pointer.position()) < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+            }
+            clusterEnd = Long.reverseBytes(pointer.getLong(0));
+        } else {
+            clusterEnd = zimFile.getChecksumPos() > 0 ? zimFile.getChecksumPos() : zimFile.length();
+        }
+        metrics.onClusterDecoded(clusterNumber, compressionType, clusterEnd - clusterPos, bytes, nanos);
+    }
+
+    private synchronized long getClusterPosition(int clusterNumber) throws IOException {
+        inputStream.seek(zimFile.getClusterPtrPos() + (long)clusterNumber * BYTES_PER_LONG);
+        return inputStream.readLongLe();
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = zimFile.openChannel();
+        }
+        return channel;
+    }
+
+    private int getFirstArticleTitleIndex() throws IOException {
+        if (firstArticleTitleIndex != -1) {
+            return firstArticleTitleIndex;
+        }
+        DirectoryEntry entry;
+        int index = 0;
+
+        while (index < zimFile.getArticleCount()) {
+            entry = getDirectoryEntryAtTitlePosition(index);
+            if (entry == null) {
+                return 0;
+            }
+            if (entry.getNamespace() == 'A') {
+                firstArticleTitleIndex = index;
+                break;
+            }
+            index++;
+        }
+        return firstArticleTitleIndex;
+    }
+
+    private int getLastArticleTitleIndex() throws IOException {
+        if (lastArticleTitleIndex != -1) {
+            return lastArticleTitleIndex;
+        }
+        DirectoryEntry entry;
+        int beginIndex = 0, endIndex = beginIndex + zimFile.getArticleCount(), midIndex = 0;
+
+        while (beginIndex <= endIndex) {
+            midIndex = beginIndex + ((endIndex - beginIndex) / 2);
+            entry = getDirectoryEntryAtTitlePosition(midIndex);
+            if (entry == null) {
+                return 0;
+            }
+            if (entry.getNamespace() != 'A') {
+                endIndex = midIndex - 1;
+            } else {
+                beginIndex = midIndex + 1;
+            }
+        }
+        lastArticleTitleIndex = midIndex;
+        return midIndex;
+    }
+
+    /**
+     * Find the position of the first entry in the title list that doesn't sort before the given
+     * namespace and title, or the article count if there is none.
+     */
+    private int findFirstTitlePosition(char namespace, String title) throws IOException {
+        int beginIndex = 0, endIndex = zimFile.getArticleCount(), midIndex;
+        int probes = 0;
+        long start = System.nanoTime();
+        while (beginIndex < endIndex) {
+            midIndex = beginIndex + ((endIndex - beginIndex) / 2);
+            DirectoryEntry entry = getDirectoryEntryAtTitlePosition(midIndex);
+            probes++;
+            if (entry.getNamespace() < namespace
+                    || (entry.getNamespace() == namespace && entry.getTitle().compareTo(title) < 0)) {
+                beginIndex = midIndex + 1;
+            } else {
+                endIndex = midIndex;
+            }
+        }
+        metrics.onLookup(ZimMetrics.LOOKUP_TITLE, title, probes, System.nanoTime() - start);
+        return beginIndex;
+    }
+
+    private DirectoryEntry binarySearchByUrl(char namespace, String url, boolean getClosest) throws IOException {
+        DirectoryEntry entry = null;
+        int beginIndex = 0, endIndex = beginIndex + zimFile.getArticleCount(), midIndex;
+        int probes = 0;
+        long start = System.nanoTime();
+        try {
+            while (beginIndex <= endIndex) {
+                midIndex = beginIndex + ((endIndex - beginIndex) / 2);
+                entry = getDirectoryEntryAtUrlPosition(midIndex);
+                probes++;
+                if (entry == null) {
+                    return null;
+                }
+
+                if (namespace < entry.getNamespace()) {
+                    endIndex = midIndex - 1;
+                    continue;
+                } else if (namespace > entry.getNamespace()) {
+                    beginIndex = midIndex + 1;
+                    continue;
+                }
+
+                if (url.compareTo(entry.getUrl()) < 0) {
+                    endIndex = midIndex - 1;
+                } else if (url.compareTo(entry.getUrl()) > 0) {
+                    beginIndex = midIndex + 1;
+                } else {
+                    return entry;
+                }
+            }
+            return getClosest ? entry : null;
+        } finally {
+            metrics.onLookup(ZimMetrics.LOOKUP_URL, url, probes, System.nanoTime() - start);
+        }
+    }
+
+    private DirectoryEntry binarySearchByTitle(char namespace, String title, boolean getClosest) throws IOException {
+        DirectoryEntry entry = null;
+        int beginIndex = 0, endIndex = beginIndex + zimFile.getArticleCount(), midIndex;
+        int probes = 0;
+        long start = System.nanoTime();
+        try {
+            while (beginIndex <= endIndex) {
+                midIndex = beginIndex + ((endIndex - beginIndex) / 2);
+                entry = getDirectoryEntryAtTitlePosition(midIndex);
+                probes++;
+                if (entry == null) {
+                    return null;
+                }
+
+                if (namespace < entry.getNamespace()) {
+                    endIndex = midIndex - 1;
+                    continue;
+                } else if (namespace > entry.getNamespace()) {
+                    beginIndex = midIndex + 1;
+                    continue;
+                }
+
+                if (title.compareTo(entry.getTitle()) < 0) {
+                    endIndex = midIndex - 1;
+                } else if (title.compareTo(entry.getTitle()) > 0) {
+                    beginIndex = midIndex + 1;
+                } else {
+                    return entry;
+                }
+            }
+            return getClosest ? entry : null;
+        } finally {
+            metrics.onLookup(ZimMetrics.LOOKUP_TITLE, title, probes, System.nanoTime() - start);
+        }
+    }
+
+    private synchronized DirectoryEntry getDirectoryEntryAtTitlePosition(int position) throws IOException {
+        DirectoryEntry cached = (DirectoryEntry) cache.get(cacheOwner, ZimCache.KIND_TITLE_ENTRY, position);
+        if (cached != null) {
+            metrics.onCacheHit(ZimMetrics.CACHE_TITLE_ENTRY);
+            return cached;
+        }
+        metrics.onCacheMiss(ZimMetrics.CACHE_TITLE_ENTRY);
+        inputStream.seek(zimFile.getTitlePtrPos() + (long)BYTES_PER_INT * position);
+        int urlPosition = inputStream.readIntLe();
+        DirectoryEntry entry = getDirectoryEntryAtUrlPosition(urlPosition);
+        entry.setTitleListIndex(position);
+        cache.put(cacheOwner, ZimCache.KIND_TITLE_ENTRY, position, entry, getEntrySize(entry));
+        return entry;
+    }
+
+    private synchronized DirectoryEntry getDirectoryEntryAtUrlPosition(int position) throws IOException {
+        DirectoryEntry cached = (DirectoryEntry) cache.get(cacheOwner, ZimCache.KIND_URL_ENTRY, position);
+        if (cached != null) {
+            metrics.onCacheHit(ZimMetrics.CACHE_URL_ENTRY);
+            return cached;
+        }
+        metrics.onCacheMiss(ZimMetrics.CACHE_URL_ENTRY);
+        inputStream.seek(zimFile.getUrlPtrPos() + (long)BYTES_PER_LONG * position);
+
+        // Go to the location of the directory entry
+        inputStream.seek(inputStream.readLongLe());
+        int type = inputStream.readShortLe();
+
+        // ignore parameter length
+        inputStream.read();
+
+        char namespace = (char) inputStream.read();
+        int revision = inputStream.readIntLe();
+
+        DirectoryEntry entry;
+        if (type == DirectoryEntry.TYPE_REDIRECT) {
+            int redirectIndex = inputStream.readIntLe();
+            String url = inputStream.readString();
+            String title = inputStream.readString();
+            title = title.length() == 0 ? url : title;
+            entry = new RedirectEntry(type, namespace, revision, redirectIndex, url, title, position);
+
+        } else {
+            int clusterNumber = inputStream.readIntLe();
+            int blobNumber = inputStream.readIntLe();
+            String url = inputStream.readString();
+            String title = inputStream.readString();
+            title = title.length() == 0 ? url : title;
+            entry = new ArticleEntry(type, namespace, revision, clusterNumber, blobNumber, url, title, position);
+        }
+        cache.put(cacheOwner, ZimCache.KIND_URL_ENTRY, position, entry, getEntrySize(entry));
+        return entry;
+    }
+
+    /**
+     * Estimate the memory used by a directory entry, for the budget of the cache.
+     */
+    private static long getEntrySize(DirectoryEntry entry) {
+        return ENTRY_OVERHEAD + 2L * (entry.getUrl().length() + entry.getTitle().length());
+    }
+
+    private DirectoryEntry resolveRedirect(DirectoryEntry inEntry) throws IOException {
+        DirectoryEntry entry = inEntry;
+        final int maxRedirects = 16;
+        int hops = 0;
+        for (int i = 0; i < maxRedirects; i++) {
+            if (!(entry instanceof RedirectEntry)) {
+                break;
+            }
+            entry = getDirectoryEntryAtUrlPosition(((RedirectEntry) entry).getRedirectIndex());
+            hops++;
+        }
+        if (hops > 0) {
+            metrics.onRedirect(hops);
+        }
+        if (entry instanceof RedirectEntry) {
+            throw new IOException("Too many redirects.");
+        }
+        return entry;
+    }
+
+    /**
+     * A region of the ZIM file that holds the content of an entry.
+     */
+    public static final class BlobRegion {
+        private final File file;
+        private final long offset;
+        private final long length;
+
+        BlobRegion(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return The file that holds the region, which is the part that holds it if the ZIM
+         *         file is split.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
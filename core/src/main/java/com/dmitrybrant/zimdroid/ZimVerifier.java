@@ -0,0 +1,242 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Verifies the integrity of a ZIM file ahead of time, so that it can later be read by a
+ * {@link ZimReader} with integrity checks disabled.
+ *
+ * A complete verification checks the MD5 checksum of the whole file, which catches truncated
+ * or damaged downloads, and then decodes every cluster, which catches clusters that are
+ * malformed or fail their XZ checks even though the file is intact.
+ */
+public class ZimVerifier {
+    private static final int CHECKSUM_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int CHECKSUM_SIZE = 16;
+
+    /**
+     * Receives progress updates during verification, on the thread that called the verify method.
+     */
+    public interface ProgressListener {
+        /**
+         * @param done Number of bytes checksummed, or clusters verified, so far.
+         * @param total Total number of bytes to checksum, or clusters to verify.
+         */
+        void onProgress(long done, long total);
+    }
+
+    private final ZimFile zimFile;
+    private int lzmaDictSize;
+    private ForkJoinPool pool;
+    private ProgressListener progressListener;
+
+    public ZimVerifier(ZimFile file) {
+        zimFile = file;
+    }
+
+    /**
+     * Set the dictionary size that will be used by the LZMA decoder.
+     * See {@link ZimReader#setLzmaDictSize(int)}.
+     */
+    public void setLzmaDictSize(int dictSize) {
+        lzmaDictSize = dictSize;
+    }
+
+    /**
+     * @param pool Pool on which to decode clusters in parallel, or null to decode them one at a
+     *             time on the calling thread, which is the default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Verify the MD5 checksum of the file, if it has one, and then every cluster.
+     * @throws IOException if the file is damaged.
+     */
+    public void verify() throws IOException {
+        if (zimFile.getChecksumPos() > 0) {
+            verifyChecksum();
+        }
+        verifyClusters();
+    }
+
+    /**
+     * Compute the MD5 checksum of the file and compare it with the one stored in the file.
+     * The file is read sequentially in large chunks, so this runs at the speed of the disk.
+     * @throws IOException if the file has no checksum, is truncated, or the checksum doesn't match.
+     */
+    public void verifyChecksum() throws IOException {
+        long checksumPos = zimFile.getChecksumPos();
+        if (checksumPos <= 0) {
+            throw new IOException("ZIM file has no checksum.");
+        }
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (FileChannel channel = zimFile.openChannel()) {
+            if (channel.size() < checksumPos + CHECKSUM_SIZE) {
+                throw new IOException("ZIM file is truncated.");
+            }
+            // A direct buffer lets the channel read without copying through a temporary buffer.
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+            long position = 0;
+            while (position < checksumPos) {
+                buffer.clear();
+                if (checksumPos - position < buffer.capacity()) {
+                    buffer.limit((int) (checksumPos - position));
+                }
+                int count = channel.read(buffer, position);
+                if (count < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+                buffer.flip();
+                md5.update(buffer);
+                position += count;
+                reportProgress(position, checksumPos);
+            }
+
+            ByteBuffer expected = ByteBuffer.allocate(CHECKSUM_SIZE);
+            while (expected.hasRemaining()) {
+                if (channel.read(expected, checksumPos + expected.position()) < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+            }
+            if (!MessageDigest.isEqual(md5.digest(), expected.array())) {
+                throw new IOException("ZIM file checksum does not match.");
+            }
+        }
+    }
+
+    /**
+     * Fully decode every cluster in the file, validating its offset table and, for compressed
+     * clusters, the XZ block checks, index and stream footer.
+     * @throws IOException if any cluster is truncated, malformed or fails its integrity checks.
+     */
+    public void verifyClusters() throws IOException {
+        SingleXZInputStream.setLZMA2DictSize(lzmaDictSize);
+        int clusterCount = zimFile.getClusterCount();
+        try (FileChannel channel = zimFile.openChannel()) {
+            long[] clusterPositions = readClusterPointers(channel);
+            if (pool == null) {
+                for (int i = 0; i < clusterCount; i++) {
+                    verifyCluster(channel, i, clusterPositions[i]);
+                    reportProgress(i + 1, clusterCount);
+                }
+                return;
+            }
+
+            // Keep a bounded number of clusters in flight, and report them in order.
+            ArrayDeque<ForkJoinTask<Void>> pending = new ArrayDeque<>();
+            int maxPending = 2 * pool.getParallelism();
+            int verified = 0;
+            try {
+                for (int i = 0; i < clusterCount; i++) {
+                    if (pending.size() >= maxPending) {
+                        waitFor(pending.remove());
+                        reportProgress(++verified, clusterCount);
+                    }
+                    pending.add(pool.submit(new ClusterTask(channel, i, clusterPositions[i])));
+                }
+                while (!pending.isEmpty()) {
+                    waitFor(pending.remove());
+                    reportProgress(++verified, clusterCount);
+                }
+            } finally {
+                // Don't close the channel under tasks that are still running.
+                for (ForkJoinTask<Void> task : pending) {
+                    task.cancel(false);
+                }
+                for (ForkJoinTask<Void> task : pending) {
+                    task.quietlyJoin();
+                }
+            }
+        }
+    }
+
+    private long[] readClusterPointers(FileChannel channel) throws IOException {
+        int clusterCount = zimFile.getClusterCount();
+        ByteBuffer buffer = ByteBuffer.allocate(clusterCount * ZimReader.BYTES_PER_LONG);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, zimFile.getClusterPtrPos() + buffer.position()) < 0) {
+                throw new IOException("Failed to read from stream.");
+            }
+        }
+        buffer.flip();
+        long fileSize = channel.size();
+        long[] positions = new long[clusterCount];
+        for (int i = 0; i < clusterCount; i++) {
+            positions[i] = Long.reverseBytes(buffer.getLong());
+            if (positions[i] < 0 || positions[i] >= fileSize) {
+                throw new IOException("Cluster " + i + " is corrupt.",
+                        new IOException("Invalid cluster pointer: " + positions[i]));
+            }
+        }
+        return positions;
+    }
+
+    private static void verifyCluster(FileChannel channel, int clusterNumber, long position) throws IOException {
+        try {
+            ClusterDecoder.decode(new ChannelInputStream(channel, position), true, channel.size() - position);
+        } catch (IOException e) {
+            throw new IOException("Cluster " + clusterNumber + " is corrupt.", e);
+        }
+    }
+
+    private static void waitFor(ForkJoinTask<Void> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to verify cluster.", e.getCause());
+        }
+    }
+
+    private void reportProgress(long done, long total) {
+        if (progressListener != null) {
+            progressListener.onProgress(done, total);
+        }
+    }
+
+    private static final class ClusterTask implements Callable<Void> {
+        private final FileChannel channel;
+        private final int clusterNumber;
+        private final long position;
+
+        ClusterTask(FileChannel channel, int clusterNumber, long position) {
+            this.channel = channel;
+            this.clusterNumber = clusterNumber;
+            this.position = position;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            verifyCluster(channel, clusterNumber, position);
+            return null;
+        }
+    }
+}
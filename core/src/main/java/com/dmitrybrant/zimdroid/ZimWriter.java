@@ -0,0 +1,362 @@
+package com.dmitrybrant.zimdroid;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes a ZIM file from a set of entries, compressing clusters in parallel.
+ *
+ * Entries may be added in any order; they are sorted by URL and by title when the file is
+ * written. Article contents are packed into clusters in URL order, and the clusters are
+ * compressed on a fork-join pool while being written out in order.
+ */
+public class ZimWriter {
+    static final int ZIM_HEADER_MAGIC = 0x044D495A;
+    static final int ZIM_MAJOR_VERSION = 5;
+    static final int HEADER_SIZE = 80;
+    static final int UUID_SIZE = 16;
+    static final int NO_PAGE = 0xFFFFFFFF;
+
+    private static final int ARTICLE_DIRENT_SIZE = 16;
+    private static final int REDIRECT_DIRENT_SIZE = 12;
+    private static final int CHECKSUM_BUFFER_SIZE = 1024 * 1024;
+    private static final char NAMESPACE_META = 'M';
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<String> mimeTypes = new ArrayList<>();
+    private final Map<String, Integer> mimeTypeIndices = new HashMap<>();
+
+    private int clusterSize = 1024 * 1024;
+    private LZMA2Options lzmaOptions = new LZMA2Options();
+    private ForkJoinPool pool;
+    private String mainPageKey;
+
+    /**
+     * Add an entry with content.
+     * @param namespace Namespace of the entry, e.g. 'A' for articles or 'I' for images.
+     * @param url URL of the entry within its namespace.
+     * @param title Title of the entry, or an empty string to use the URL as the title.
+     * @param mimeType MIME type of the content.
+     * @param content Content of the entry.
+     */
+    public void addArticle(char namespace, String url, String title, String mimeType, byte[] content) {
+        Integer mimeIndex = mimeTypeIndices.get(mimeType);
+        if (mimeIndex == null) {
+            mimeIndex = mimeTypes.size();
+            mimeTypes.add(mimeType);
+            mimeTypeIndices.put(mimeType, mimeIndex);
+        }
+        entries.add(new Entry(namespace, url, title, mimeIndex, content, null));
+    }
+
+    /**
+     * Add an entry that redirects to another entry, which must also be added before writing.
+     * @param namespace Namespace of the redirect.
+     * @param url URL of the redirect within its namespace.
+     * @param title Title of the redirect, or an empty string to use the URL as the title.
+     * @param targetNamespace Namespace of the entry to redirect to.
+     * @param targetUrl URL of the entry to redirect to.
+     */
+    public void addRedirect(char namespace, String url, String title, char targetNamespace, String targetUrl) {
+        entries.add(new Entry(namespace, url, title, DirectoryEntry.TYPE_REDIRECT, null,
+                getKey(targetNamespace, targetUrl)));
+    }
+
+    /**
+     * Add a metadata value, such as "Title", "Description" or "Date", to the metadata namespace.
+     */
+    public void addMetadata(String name, String value) {
+        addArticle(NAMESPACE_META, name, "", "text/plain", value.getBytes(UTF_8));
+    }
+
+    /**
+     * Set the entry that is the main page of the archive. By default there is no main page.
+     */
+    public void setMainPage(char namespace, String url) {
+        mainPageKey = getKey(namespace, url);
+    }
+
+    /**
+     * @param size Target uncompressed size of each cluster, in bytes. Larger clusters compress
+     *             better, but every blob read from them is slower.
+     */
+    public void setClusterSize(int size) {
+        clusterSize = size;
+    }
+
+    /**
+     * @param compressed Whether to compress clusters with LZMA. Defaults to true.
+     */
+    public void setCompressed(boolean compressed) {
+        lzmaOptions = compressed ? new LZMA2Options() : null;
+    }
+
+    /**
+     * @param preset LZMA compression preset, from 0 (fastest) to 9. Only used when compressed.
+     */
+    public void setLzmaPreset(int preset) throws UnsupportedOptionsException {
+        if (lzmaOptions != null) {
+            lzmaOptions.setPreset(preset);
+        }
+    }
+
+    /**
+     * Set the pool on which clusters are compressed. By default, a pool with one thread per
+     * processor is created for the duration of each {@link #write(File)}.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Write all the entries added so far to a ZIM file.
+     * @param file File to write, which will be overwritten if it exists.
+     */
+    public void write(File file) throws IOException {
+        List<Entry> urlOrder = new ArrayList<>(entries);
+        Collections.sort(urlOrder, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.namespace != b.namespace ? a.namespace - b.namespace : a.url.compareTo(b.url);
+            }
+        });
+        Map<String, Entry> entriesByKey = new HashMap<>();
+        for (int i = 0; i < urlOrder.size(); i++) {
+            Entry entry = urlOrder.get(i);
+            entry.urlIndex = i;
+            if (entriesByKey.put(getKey(entry.namespace, entry.url), entry) != null) {
+                throw new IllegalStateException("Duplicate entry: " + getKey(entry.namespace, entry.url));
+            }
+        }
+
+        List<Entry> titleOrder = new ArrayList<>(urlOrder);
+        Collections.sort(titleOrder, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.namespace != b.namespace ? a.namespace - b.namespace
+                        : a.getEffectiveTitle().compareTo(b.getEffectiveTitle());
+            }
+        });
+
+        // Pack the contents into clusters in URL order, and resolve redirects.
+        List<List<byte[]>> clusters = new ArrayList<>();
+        List<byte[]> blobs = null;
+        long blobsSize = 0;
+        for (Entry entry : urlOrder) {
+            if (entry.redirectKey != null) {
+                Entry target = entriesByKey.get(entry.redirectKey);
+                if (target == null) {
+                    throw new IllegalStateException("Redirect target not found: " + entry.redirectKey);
+                }
+                entry.redirectIndex = target.urlIndex;
+                continue;
+            }
+            if (blobs == null || (!blobs.isEmpty() && blobsSize + entry.content.length > clusterSize)) {
+                blobs = new ArrayList<>();
+                blobsSize = 0;
+                clusters.add(blobs);
+            }
+            entry.clusterNumber = clusters.size() - 1;
+            entry.blobNumber = blobs.size();
+            blobs.add(entry.content);
+            blobsSize += entry.content.length;
+        }
+
+        int mainPage = NO_PAGE;
+        if (mainPageKey != null) {
+            Entry mainEntry = entriesByKey.get(mainPageKey);
+            if (mainEntry == null) {
+                throw new IllegalStateException("Main page not found: " + mainPageKey);
+            }
+            mainPage = mainEntry.urlIndex;
+        }
+
+        ForkJoinPool writePool = pool != null ? pool : new ForkJoinPool();
+        long mimeListPos;
+        long urlPtrPos;
+        long titlePtrPos;
+        long clusterPtrPos;
+        long[] clusterOffsets;
+        long checksumPos;
+        try (ZimOutputStream out = new ZimOutputStream(new FileOutputStream(file))) {
+            out.write(new byte[HEADER_SIZE]);
+
+            mimeListPos = out.getPosition();
+            for (String mimeType : mimeTypes) {
+                out.writeString(mimeType);
+            }
+            out.writeString("");
+
+            urlPtrPos = out.getPosition();
+            long direntPos = urlPtrPos + (long) urlOrder.size() * (ZimReader.BYTES_PER_LONG + ZimReader.BYTES_PER_INT);
+            for (Entry entry : urlOrder) {
+                out.writeLongLe(direntPos);
+                direntPos += entry.getDirentSize();
+            }
+
+            titlePtrPos = out.getPosition();
+            for (Entry entry : titleOrder) {
+                out.writeIntLe(entry.urlIndex);
+            }
+
+            for (Entry entry : urlOrder) {
+                out.writeShortLe(entry.mimeType);
+                out.write(0);
+                out.write(entry.namespace);
+                out.writeIntLe(0);
+                if (entry.redirectKey != null) {
+                    out.writeIntLe(entry.redirectIndex);
+                } else {
+                    out.writeIntLe(entry.clusterNumber);
+                    out.writeIntLe(entry.blobNumber);
+                }
+                out.write(entry.urlBytes);
+                out.write(0);
+                out.write(entry.titleBytes);
+                out.write(0);
+            }
+
+            ClusterWriter clusterWriter = new ClusterWriter(out, lzmaOptions, writePool);
+            for (List<byte[]> cluster : clusters) {
+                clusterWriter.add(cluster);
+            }
+            clusterOffsets = clusterWriter.finish();
+
+            clusterPtrPos = out.getPosition();
+            for (long offset : clusterOffsets) {
+                out.writeLongLe(offset);
+            }
+            checksumPos = out.getPosition();
+        } finally {
+            if (writePool != pool) {
+                writePool.shutdown();
+            }
+        }
+
+        byte[] uuid = new byte[UUID_SIZE];
+        UUID randomUuid = UUID.randomUUID();
+        for (int i = 0; i < ZimReader.BYTES_PER_LONG; i++) {
+            uuid[i] = (byte) (randomUuid.getMostSignificantBits() >>> (i * 8));
+            uuid[i + ZimReader.BYTES_PER_LONG] = (byte) (randomUuid.getLeastSignificantBits() >>> (i * 8));
+        }
+        writeHeader(file, uuid, urlOrder.size(), clusterOffsets.length, urlPtrPos, titlePtrPos,
+                clusterPtrPos, mimeListPos, mainPage, checksumPos);
+        appendChecksum(file, checksumPos);
+    }
+
+    /**
+     * Fill in the header of a ZIM file that has been written with a placeholder in its place.
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    static void writeHeader(File file, byte[] uuid, int entryCount, int clusterCount, long urlPtrPos,
+                            long titlePtrPos, long clusterPtrPos, long mimeListPos, int mainPage,
+                            long checksumPos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        try (ZimOutputStream header = new ZimOutputStream(bytes)) {
+            header.writeIntLe(ZIM_HEADER_MAGIC);
+            header.writeShortLe(ZIM_MAJOR_VERSION);
+            header.writeShortLe(0);
+            header.write(uuid);
+            header.writeIntLe(entryCount);
+            header.writeIntLe(clusterCount);
+            header.writeLongLe(urlPtrPos);
+            header.writeLongLe(titlePtrPos);
+            header.writeLongLe(clusterPtrPos);
+            header.writeLongLe(mimeListPos);
+            header.writeIntLe(mainPage);
+            header.writeIntLe(NO_PAGE);
+            header.writeLongLe(checksumPos);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Append the MD5 checksum of everything up to checksumPos, which must be the end of the file.
+     */
+    static void appendChecksum(File file, long checksumPos) throws IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            long remaining = checksumPos;
+            while (remaining > 0) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("Failed to read from stream.");
+                }
+                md5.update(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(md5.digest());
+        }
+    }
+
+    private static String getKey(char namespace, String url) {
+        return namespace + "/" + url;
+    }
+
+    private static class Entry {
+        final char namespace;
+        final String url;
+        final String title;
+        final int mimeType;
+        final byte[] content;
+        final String redirectKey;
+        final byte[] urlBytes;
+        final byte[] titleBytes;
+
+        int urlIndex;
+        int clusterNumber;
+        int blobNumber;
+        int redirectIndex;
+
+        Entry(char namespace, String url, String title, int mimeType, byte[] content, String redirectKey) {
+            this.namespace = namespace;
+            this.url = url;
+            this.title = title;
+            this.mimeType = mimeType;
+            this.content = content;
+            this.redirectKey = redirectKey;
+            urlBytes = url.getBytes(UTF_8);
+            titleBytes = title.getBytes(UTF_8);
+        }
+
+        String getEffectiveTitle() {
+            return title.length() == 0 ? url : title;
+        }
+
+        int getDirentSize() {
+            // Fixed fields, plus both strings and their null terminators.
+            return (redirectKey != null ? REDIRECT_DIRENT_SIZE : ARTICLE_DIRENT_SIZE)
+                    + urlBytes.length + titleBytes.length + 2;
+        }
+    }
+}
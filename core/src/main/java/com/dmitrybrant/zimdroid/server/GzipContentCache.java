@@ -0,0 +1,150 @@
+package com.dmitrybrant.zimdroid.server;
+
+import com.dmitrybrant.zimdroid.DirectoryEntry;
+import com.dmitrybrant.zimdroid.Util;
+import com.dmitrybrant.zimdroid.ZimReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-encoded content of text entries, for serving to HTTP clients that accept gzip without
+ * decompressing the entry from the ZIM file and compressing it again on every request.
+ *
+ * Encoded bodies are kept in least-recently-used order within a budget of bytes, so the entries
+ * that stay cached are the ones being requested. Since the content is compressed only once
+ * while cached, it is compressed at the highest level, except for bodies too large to be
+ * cached, which would otherwise pay for it on every request. Bodies are keyed by the UUID of the file
+ * and the URL index of the entry, so one cache can be shared by the servers of several files.
+ * This class is thread safe.
+ */
+public class GzipContentCache {
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final LinkedHashMap<String, byte[]> bodies = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSize;
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxSize Maximum total size of the cached gzip-encoded bodies, in bytes.
+     */
+    public GzipContentCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Whether content of the given MIME type is worth compressing, i.e. text, as opposed to
+     * images and other media that are already compressed.
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("javascript") || type.contains("json")
+                || type.contains("xml") || type.contains("svg");
+    }
+
+    /**
+     * Get the gzip-encoded content of an entry, encoding it and adding it to the cache if it
+     * isn't cached yet.
+     * @param entry Entry whose content to encode, as returned by
+     *              {@link ZimReader#getEntryForUrl(String)}.
+     */
+    public byte[] getEncoded(ZimReader reader, DirectoryEntry entry) throws IOException {
+        String key = getKey(reader, entry);
+        byte[] body;
+        synchronized (this) {
+            body = bodies.get(key);
+            if (body != null) {
+                hitCount++;
+                return body;
+            }
+            missCount++;
+        }
+
+        // Encode outside the lock, so that misses don't hold up hits. Two threads may encode
+        // the same entry at the same time, which does no harm.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = reader.getStreamForEntry(entry);
+             LeveledGzipOutputStream out = new LeveledGzipOutputStream(bytes)) {
+            out.setLevel(Deflater.BEST_COMPRESSION);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                if (bytes.size() > maxSize) {
+                    // The body won't be cached, so compress the rest of it at the usual level.
+                    out.setLevel(Deflater.DEFAULT_COMPRESSION);
+                }
+            }
+        }
+        body = bytes.toByteArray();
+        put(key, body);
+        return body;
+    }
+
+    /**
+     * @return Total size of the cached bodies, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void clear() {
+        bodies.clear();
+        size = 0;
+    }
+
+    private synchronized void put(String key, byte[] body) {
+        if (body.length > maxSize) {
+            return;
+        }
+        byte[] old = bodies.put(key, body);
+        if (old != null) {
+            size -= old.length;
+        }
+        size += body.length;
+
+        // The new body is the most recently used one and fits into the cache by itself, so it
+        // won't be evicted.
+        Iterator<byte[]> it = bodies.values().iterator();
+        while (size > maxSize) {
+            size -= it.next().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Gzip stream whose compression level can be changed while compressing.
+     */
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(ByteArrayOutputStream out) throws IOException {
+            super(out, COPY_BUFFER_SIZE);
+        }
+
+        void setLevel(int level) {
+            def.setLevel(level);
+        }
+    }
+
+    private static String getKey(ZimReader reader, DirectoryEntry entry) {
+        return Util.toHex(reader.getZimFile().getUuid()) + "/" + entry.getUrlListIndex();
+    }
+}
@@ -0,0 +1,161 @@
+package com.dmitrybrant.zimdroid.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The request line and headers of an HTTP/1.x request. Request bodies are not supported.
+ */
+final class HttpRequest {
+    private static final Charset ISO_8859_1 = Charset.forName("iso-8859-1");
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    private final String method;
+    private final String path;
+    private final String version;
+    private final Map<String, String> headers;
+
+    private HttpRequest(String method, String path, String version, Map<String, String> headers) {
+        this.method = method;
+        this.path = path;
+        this.version = version;
+        this.headers = headers;
+    }
+
+    /**
+     * Find the end of the request head, i.e. the empty line after the headers.
+     * @return The length of the head including the empty line, or -1 if it isn't complete.
+     */
+    static int findHeadLength(byte[] bytes, int length) {
+        for (int i = 3; i < length; i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a complete request head.
+     * @return The request, or null if it is malformed.
+     */
+    static HttpRequest parse(byte[] bytes, int length) {
+        String[] lines = new String(bytes, 0, length, ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            return null;
+        }
+        String version = requestLine[2];
+        if (!HTTP_1_1.equals(version) && !HTTP_1_0.equals(version)) {
+            return null;
+        }
+        String target = requestLine[1];
+        int queryPos = target.indexOf('?');
+        if (queryPos >= 0) {
+            target = target.substring(0, queryPos);
+        }
+        String path = decodePath(target);
+        if (path == null || !path.startsWith("/")) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].length() == 0) {
+                continue;
+            }
+            int colonPos = lines[i].indexOf(':');
+            if (colonPos <= 0) {
+                return null;
+            }
+            String name = lines[i].substring(0, colonPos).trim().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colonPos + 1).trim();
+            String previous = headers.get(name);
+            headers.put(name, previous == null ? value : previous + ", " + value);
+        }
+        return new HttpRequest(requestLine[0], path, version, headers);
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The decoded path of the request target, without the query string.
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * @param name Lower-case name of the header.
+     * @return The value of the header, with repeated headers joined by commas, or null.
+     */
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    boolean isKeepAlive() {
+        String connection = getHeader("connection");
+        connection = connection == null ? "" : connection.toLowerCase(Locale.ROOT);
+        if (HTTP_1_1.equals(version)) {
+            return !connection.contains("close");
+        }
+        return connection.contains("keep-alive");
+    }
+
+    boolean isHttp10() {
+        return HTTP_1_0.equals(version);
+    }
+
+    /**
+     * Decode percent-encoded UTF-8 in a path. Unlike form decoding, '+' is left alone.
+     * @param path The path as read from the request head, one char per byte, so that raw UTF-8
+     *             bytes and percent-encoded ones are decoded alike.
+     * @return The decoded path, or null if it is malformed.
+     */
+    static String decodePath(String path) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= path.length()) {
+                    return null;
+                }
+                int high = Character.digit(path.charAt(i + 1), 16);
+                int low = Character.digit(path.charAt(i + 2), 16);
+                if (high < 0 || low < 0) {
+                    return null;
+                }
+                bytes.write((high << 4) | low);
+                i += 2;
+            } else {
+                bytes.write((byte) c);
+            }
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Percent-encode a path for use in a header, leaving unreserved characters and '/' alone.
+     */
+    static String encodePath(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (byte b : path.getBytes(UTF_8)) {
+            int c = b & 0xFF;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/') {
+                sb.append((char) c);
+            } else {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return sb.toString();
+    }
+}
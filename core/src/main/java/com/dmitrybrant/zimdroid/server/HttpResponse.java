@@ -0,0 +1,125 @@
+package com.dmitrybrant.zimdroid.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HTTP response, with its body held in memory.
+ */
+final class HttpResponse {
+    static final int OK = 200;
+    static final int PARTIAL_CONTENT = 206;
+    static final int FOUND = 302;
+    static final int NOT_MODIFIED = 304;
+    static final int BAD_REQUEST = 400;
+    static final int NOT_FOUND = 404;
+    static final int METHOD_NOT_ALLOWED = 405;
+    static final int RANGE_NOT_SATISFIABLE = 416;
+    static final int HEADERS_TOO_LARGE = 431;
+    static final int INTERNAL_SERVER_ERROR = 500;
+    static final int SERVICE_UNAVAILABLE = 503;
+
+    private static final Charset ISO_8859_1 = Charset.forName("iso-8859-1");
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body = NO_BODY;
+    private int bodyOffset;
+    private int bodyLength;
+    private boolean close;
+
+    HttpResponse(int status) {
+        this.status = status;
+    }
+
+    /**
+     * A response with a short plain text body describing the status.
+     */
+    static HttpResponse error(int status) {
+        HttpResponse response = new HttpResponse(status);
+        byte[] text = (status + " " + getReason(status) + "\n").getBytes(ISO_8859_1);
+        response.setHeader("Content-Type", "text/plain");
+        response.setBody(text, 0, text.length);
+        return response;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    void setBody(byte[] body, int offset, int length) {
+        this.body = body;
+        bodyOffset = offset;
+        bodyLength = length;
+    }
+
+    int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Close the connection after sending this response.
+     */
+    void setClose(boolean close) {
+        this.close = close;
+    }
+
+    boolean isClose() {
+        return close;
+    }
+
+    /**
+     * Encode the response for the wire.
+     * @param includeBody False for responses to HEAD requests, which still get the headers that
+     *                    describe the body.
+     */
+    ByteBuffer[] toBuffers(boolean http10, boolean includeBody) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(http10 ? "HTTP/1.0 " : "HTTP/1.1 ").append(status).append(' ').append(getReason(status)).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (status != NOT_MODIFIED) {
+            sb.append("Content-Length: ").append(bodyLength).append("\r\n");
+        }
+        if (close) {
+            sb.append("Connection: close\r\n");
+        } else if (http10) {
+            sb.append("Connection: keep-alive\r\n");
+        }
+        sb.append("\r\n");
+        ByteBuffer head = ByteBuffer.wrap(sb.toString().getBytes(ISO_8859_1));
+        if (!includeBody || bodyLength == 0) {
+            return new ByteBuffer[] {head};
+        }
+        return new ByteBuffer[] {head, ByteBuffer.wrap(body, bodyOffset, bodyLength)};
+    }
+
+    private static String getReason(int status) {
+        switch (status) {
+            case OK: return "OK";
+            case PARTIAL_CONTENT: return "Partial Content";
+            case FOUND: return "Found";
+            case NOT_MODIFIED: return "Not Modified";
+            case BAD_REQUEST: return "Bad Request";
+            case NOT_FOUND: return "Not Found";
+            case METHOD_NOT_ALLOWED: return "Method Not Allowed";
+            case RANGE_NOT_SATISFIABLE: return "Range Not Satisfiable";
+            case HEADERS_TOO_LARGE: return "Request Header Fields Too Large";
+            case INTERNAL_SERVER_ERROR: return "Internal Server Error";
+            case SERVICE_UNAVAILABLE: return "Service Unavailable";
+            default: return "Unknown";
+        }
+    }
+}
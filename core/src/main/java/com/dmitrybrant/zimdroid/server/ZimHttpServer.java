@@ -0,0 +1,440 @@
+package com.dmitrybrant.zimdroid.server;
+
+import com.dmitrybrant.zimdroid.ZimReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small HTTP/1.1 server for the content of a ZIM file, for browsers on the local machine or
+ * network. See {@link ZimRequestHandler} for how URLs map to entries.
+ *
+ * All connections are handled by a single selector thread, so idle and keep-alive connections
+ * cost no threads. Requests are decoded on a bounded pool of worker threads; when the pool and
+ * its queue are full, further requests get a 503 response rather than piling up. Responses
+ * support keep-alive (including pipelined requests), single byte ranges, ETags derived from
+ * the UUID of the file and the index of the entry, and optionally gzip encoding of text content
+ * through a {@link GzipContentCache}.
+ *
+ * <pre>
+ * ZimHttpServer server = new ZimHttpServer(reader);
+ * server.start(new InetSocketAddress(8080));
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class ZimHttpServer implements Closeable {
+    private static final int DEFAULT_WORKER_THREADS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 1000;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_HEAD_SIZE = 16 * 1024;
+    private static final int BACKLOG = 1024;
+
+    private final ZimRequestHandler handler;
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private SelectionKey acceptKey;
+    // Time until which no connections are accepted, after accepting failed, or 0.
+    private long acceptPausedUntil;
+    private ThreadPoolExecutor workers;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    // Connections whose responses are ready, handed from the workers to the selector thread.
+    private final ConcurrentLinkedQueue<Connection> readyConnections = new ConcurrentLinkedQueue<>();
+
+    public ZimHttpServer(ZimReader reader) {
+        this(new ZimRequestHandler(reader));
+    }
+
+    ZimHttpServer(ZimRequestHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @param threads Number of threads that decode content. Defaults to 4.
+     */
+    public void setWorkerThreads(int threads) {
+        workerThreads = threads;
+    }
+
+    /**
+     * @param size Number of requests that may wait for a worker before new ones are turned away.
+     */
+    public void setQueueSize(int size) {
+        queueSize = size;
+    }
+
+    /**
+     * Serve text content gzip-encoded to clients that accept it, from the given cache, which
+     * may be shared with other servers. By default, content is always sent unencoded.
+     * @param cache Cache of encoded content, or null.
+     */
+    public void setGzipCache(GzipContentCache cache) {
+        handler.setGzipCache(cache);
+    }
+
+    /**
+     * @param millis Time after which a connection that has no request in progress is closed.
+     */
+    public void setIdleTimeout(long millis) {
+        idleTimeoutMillis = millis;
+    }
+
+    /**
+     * Start listening on the given address, e.g. {@code new InetSocketAddress(0)} for any free
+     * port on all interfaces. Requests are served on background threads until {@link #close()}.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started.");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(address, BACKLOG);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        acceptPausedUntil = 0;
+
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, WORKER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory("worker"));
+        workers.allowCoreThreadTimeOut(true);
+
+        running = true;
+        selectorThread = new DaemonThreadFactory("selector").newThread(new Runnable() {
+            @Override
+            public void run() {
+                runSelector();
+            }
+        });
+        selectorThread.start();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stop the server and close all connections.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    private void runSelector() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                long timeout = SELECT_TIMEOUT_MILLIS;
+                if (acceptPausedUntil != 0) {
+                    timeout = Math.max(1, Math.min(timeout, acceptPausedUntil - System.currentTimeMillis()));
+                }
+                selector.select(timeout);
+                Connection ready;
+                while ((ready = readyConnections.poll()) != null) {
+                    ready.sendResponse();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        } else if (key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (acceptPausedUntil != 0 && now >= acceptPausedUntil) {
+                    acceptPausedUntil = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MILLIS) {
+                    closeIdleConnections(now);
+                    lastIdleCheck = now;
+                }
+            }
+        } catch (IOException e) {
+            // The selector itself failed, so there's nothing left to serve with.
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Accept all pending connections. A failure only affects the connection at hand, so it is
+     * never passed on to the selector loop.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                // Most likely out of file descriptors. The connection stays pending, so stop
+                // accepting for a while, rather than failing on it again right away.
+                acceptKey.interestOps(0);
+                acceptPausedUntil = System.currentTimeMillis() + ACCEPT_BACKOFF_MILLIS;
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        List<Connection> idle = new ArrayList<>();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection && ((Connection) attachment).isIdleSince(now - idleTimeoutMillis)) {
+                idle.add((Connection) attachment);
+            }
+        }
+        for (Connection connection : idle) {
+            connection.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * The state of one client connection. Apart from the response handed over by a worker,
+     * this is only touched by the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long lastActivity = System.currentTimeMillis();
+
+        // The request being handled by a worker, and the response it produced.
+        private HttpRequest request;
+        private HttpResponse response;
+
+        private ByteBuffer[] output;
+        private boolean closeAfterOutput;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        boolean isIdleSince(long time) {
+            return request == null && lastActivity < time;
+        }
+
+        void onReadable() {
+            int count;
+            try {
+                count = channel.read(input);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processInput();
+        }
+
+        /**
+         * Start handling the next complete request in the input, if there is one.
+         */
+        private void processInput() {
+            if (request != null || output != null) {
+                return;
+            }
+            int headLength = HttpRequest.findHeadLength(input.array(), input.position());
+            if (headLength < 0) {
+                if (!input.hasRemaining()) {
+                    if (input.capacity() >= MAX_HEAD_SIZE) {
+                        respondNow(HttpResponse.error(HttpResponse.HEADERS_TOO_LARGE), false);
+                        return;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+                    input.flip();
+                    larger.put(input);
+                    input = larger;
+                }
+                return;
+            }
+            final HttpRequest parsed = HttpRequest.parse(input.array(), headLength);
+            // Keep any pipelined requests that follow.
+            input.flip();
+            input.position(headLength);
+            input.compact();
+            if (parsed == null) {
+                respondNow(HttpResponse.error(HttpResponse.BAD_REQUEST), false);
+                return;
+            }
+
+            request = parsed;
+            key.interestOps(0);
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        HttpResponse result;
+                        try {
+                            result = handler.handle(parsed);
+                        } catch (RuntimeException e) {
+                            result = HttpResponse.error(HttpResponse.INTERNAL_SERVER_ERROR);
+                        }
+                        response = result;
+                        readyConnections.add(Connection.this);
+                        selector.wakeup();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                request = null;
+                respondNow(HttpResponse.error(HttpResponse.SERVICE_UNAVAILABLE), parsed.isHttp10());
+            }
+        }
+
+        /**
+         * Send a response that was produced on the selector thread, and close the connection
+         * afterwards.
+         */
+        private void respondNow(HttpResponse errorResponse, boolean http10) {
+            errorResponse.setClose(true);
+            startOutput(errorResponse.toBuffers(http10, true), true);
+        }
+
+        /**
+         * Send the response produced by a worker.
+         */
+        void sendResponse() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            HttpRequest finished = request;
+            HttpResponse result = response;
+            request = null;
+            response = null;
+            if (!finished.isKeepAlive()) {
+                result.setClose(true);
+            }
+            boolean head = "HEAD".equals(finished.getMethod());
+            startOutput(result.toBuffers(finished.isHttp10(), !head), result.isClose());
+        }
+
+        private void startOutput(ByteBuffer[] buffers, boolean close) {
+            output = buffers;
+            closeAfterOutput = close;
+            try {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (RuntimeException e) {
+                close();
+                return;
+            }
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            if (output[output.length - 1].hasRemaining()) {
+                return;
+            }
+            output = null;
+            if (closeAfterOutput) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            processInput();
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ZimHttpServer " + name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.dmitrybrant.zimdroid.server;
+
+import com.dmitrybrant.zimdroid.DirectoryEntry;
+import com.dmitrybrant.zimdroid.Util;
+import com.dmitrybrant.zimdroid.ZimReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Turns requests into responses with content from a {@link ZimReader}. Requests for
+ * "/namespace/url" are served with the content of that entry, following redirects, and "/" is
+ * redirected to the main page. Runs on the worker threads of {@link ZimHttpServer}.
+ */
+class ZimRequestHandler {
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final ZimReader reader;
+    private final String etagPrefix;
+    private volatile GzipContentCache gzipCache;
+
+    ZimRequestHandler(ZimReader reader) {
+        this.reader = reader;
+        etagPrefix = "\"" + Util.toHex(reader.getZimFile().getUuid()) + "-";
+    }
+
+    /**
+     * @param cache Cache of gzip-encoded text content for clients that accept it, or null to
+     *              always send content unencoded.
+     */
+    void setGzipCache(GzipContentCache cache) {
+        gzipCache = cache;
+    }
+
+    HttpResponse handle(HttpRequest request) {
+        boolean head = "HEAD".equals(request.getMethod());
+        if (!head && !"GET".equals(request.getMethod())) {
+            HttpResponse response = HttpResponse.error(HttpResponse.METHOD_NOT_ALLOWED);
+            response.setHeader("Allow", "GET, HEAD");
+            // Don't try to make sense of a request body that may follow.
+            response.setClose(true);
+            return response;
+        }
+        try {
+            if ("/".equals(request.getPath())) {
+                DirectoryEntry mainPage = reader.getMainPageEntry();
+                HttpResponse response = new HttpResponse(HttpResponse.FOUND);
+                response.setHeader("Location", HttpRequest.encodePath("/" + mainPage.getNamespace()
+                        + "/" + mainPage.getUrl()));
+                return response;
+            }
+            DirectoryEntry entry = reader.getEntryForUrl(request.getPath().substring(1));
+            if (entry == null) {
+                return HttpResponse.error(HttpResponse.NOT_FOUND);
+            }
+
+            String mimeType = reader.getMimeTypeForEntry(entry);
+            if (mimeType == null) {
+                mimeType = DEFAULT_MIME_TYPE;
+            }
+            GzipContentCache cache = gzipCache;
+            boolean compressible = cache != null && GzipContentCache.isCompressible(mimeType);
+            // Ranges refer to the encoded bytes of a gzip response, which no one wants, so
+            // range requests get the unencoded content.
+            boolean gzip = compressible && request.getHeader("range") == null
+                    && acceptsGzip(request.getHeader("accept-encoding"));
+
+            // The content of an entry never changes within a file, so its identity is enough,
+            // as long as the two encodings get different tags.
+            String etag = etagPrefix + entry.getUrlListIndex() + (gzip ? "-gzip\"" : "\"");
+            HttpResponse response;
+            if (matchesEtag(request.getHeader("if-none-match"), etag)) {
+                response = new HttpResponse(HttpResponse.NOT_MODIFIED);
+            } else if (gzip) {
+                byte[] body = cache.getEncoded(reader, entry);
+                response = new HttpResponse(HttpResponse.OK);
+                response.setBody(body, 0, body.length);
+                response.setHeader("Content-Encoding", "gzip");
+            } else {
+                response = serveEntry(request, entry, etag);
+            }
+            if (response.getStatus() != HttpResponse.RANGE_NOT_SATISFIABLE) {
+                response.setHeader("Content-Type", mimeType);
+                response.setHeader("ETag", etag);
+                response.setHeader("Accept-Ranges", "bytes");
+                if (compressible) {
+                    response.setHeader("Vary", "Accept-Encoding");
+                }
+            }
+            return response;
+        } catch (IOException e) {
+            return HttpResponse.error(HttpResponse.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Serve the content of an entry, or the part of it asked for by a Range header. The whole
+     * entry is decoded into memory either way, since its length is needed for the Content-Range
+     * header, so a client that fetches a large entry in many small ranges costs one full decode
+     * per range.
+     */
+    HttpResponse serveEntry(HttpRequest request, DirectoryEntry entry, String etag) throws IOException {
+        ContentBuffer content = new ContentBuffer();
+        try (InputStream in = reader.getStreamForEntry(entry)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                content.write(buffer, 0, count);
+            }
+        }
+        int length = content.size();
+
+        HttpResponse response;
+        long[] range = getRange(request, etag, length);
+        if (range == null) {
+            response = new HttpResponse(HttpResponse.OK);
+            response.setBody(content.getBuffer(), 0, length);
+        } else if (range.length == 0) {
+            response = HttpResponse.error(HttpResponse.RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return response;
+        } else {
+            response = new HttpResponse(HttpResponse.PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            response.setBody(content.getBuffer(), (int) range[0], (int) (range[1] - range[0] + 1));
+        }
+        return response;
+    }
+
+    /**
+     * Work out the byte range asked for by the request. Only a single range is supported; a
+     * request for several ranges gets the whole content, which the spec allows.
+     * @return The first and last byte of the range, an empty array if the range can't be
+     *         satisfied, or null if the whole content should be sent.
+     */
+    static long[] getRange(HttpRequest request, String etag, long length) {
+        String range = request.getHeader("range");
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String ifRange = request.getHeader("if-range");
+        if (ifRange != null && !ifRange.equals(etag)) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dashPos = spec.indexOf('-');
+        if (dashPos < 0) {
+            return null;
+        }
+        try {
+            long first;
+            long last;
+            if (dashPos == 0) {
+                long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, length - suffixLength);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dashPos));
+                last = dashPos == spec.length() - 1 ? length - 1
+                        : Math.min(length - 1, Long.parseLong(spec.substring(dashPos + 1)));
+                if (last < first) {
+                    return first < length ? null : new long[0];
+                }
+            }
+            if (first >= length || first < 0) {
+                return new long[0];
+            }
+            return new long[] {first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip, i.e. lists gzip or * without q=0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim();
+            if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives access to the collected bytes without copying them.
+     */
+    private static final class ContentBuffer extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -246,6 +246,45 @@ class BlockInputStream extends InputStream {
         return ret;
     }
 
+    public long skip(long n) throws IOException {
+        if (endReached || n <= 0)
+            return 0;
+
+        // Only a lone LZMA2 filter can skip without copying the data out.
+        // Other filter chains fall back to reading through read().
+        if (!(filterChain instanceof LZMA2InputStream))
+            return super.skip(n);
+
+        long ret = ((LZMA2InputStream)filterChain).skip(
+                n, verifyCheck ? check : null);
+
+        if (ret > 0) {
+            uncompressedSize += ret;
+
+            long compressedSize = inCounted.getSize();
+            if (compressedSize < 0
+                    || compressedSize > compressedSizeLimit
+                    || uncompressedSize < 0
+                    || (uncompressedSizeInHeader != -1
+                        && uncompressedSize > uncompressedSizeInHeader))
+                throw new CorruptedInputException();
+
+            // Same end of Block handling as in read().
+            if (ret < n || uncompressedSize == uncompressedSizeInHeader) {
+                if (filterChain.read() != -1)
+                    throw new CorruptedInputException();
+
+                validate();
+                endReached = true;
+            }
+        } else {
+            validate();
+            endReached = true;
+        }
+
+        return ret;
+    }
+
     private void validate() throws IOException {
         long compressedSize = inCounted.getSize();
 
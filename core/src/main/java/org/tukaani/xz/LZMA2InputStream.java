@@ -16,6 +16,7 @@ import java.io.IOException;
 import org.tukaani.xz.lz.LZDecoder;
 import org.tukaani.xz.rangecoder.RangeDecoderFromBuffer;
 import org.tukaani.xz.lzma.LZMADecoder;
+import org.tukaani.xz.check.Check;
 
 /**
  * Decompresses a raw LZMA2 stream (no XZ headers).
@@ -249,6 +250,85 @@ public class LZMA2InputStream extends InputStream {
         }
     }
 
+    /**
+     * Skips <code>n</code> bytes of uncompressed data.
+     * <p>
+     * The data is decoded into the dictionary as usual (later chunks
+     * may refer to it), but it isn't copied out of the dictionary, which
+     * makes this cheaper than reading into a throwaway buffer.
+     *
+     * @param       n           maximum number of uncompressed bytes to skip
+     *
+     * @return      number of bytes skipped, or <code>0</code> if
+     *              the end of the compressed stream was reached
+     *
+     * @throws      CorruptedInputException
+     *
+     * @throws      XZIOException if the stream has been closed
+     *
+     * @throws      EOFException
+     *                          compressed input is truncated or corrupt
+     *
+     * @throws      IOException may be thrown by <code>in</code>
+     */
+    public long skip(long n) throws IOException {
+        return skip(n, null);
+    }
+
+    /**
+     * Skips like <code>skip(long)</code> and passes the skipped bytes
+     * directly from the dictionary to <code>check</code>
+     * (unless it is <code>null</code>).
+     */
+    long skip(long n, Check check) throws IOException {
+        if (in == null)
+            throw new XZIOException("Stream closed");
+
+        if (exception != null)
+            throw exception;
+
+        if (n <= 0 || endReached)
+            return 0;
+
+        try {
+            long size = 0;
+
+            while (n > 0) {
+                if (uncompressedSize == 0) {
+                    decodeChunkHeader();
+                    if (endReached)
+                        return size;
+                }
+
+                int skipSizeMax = (int)Math.min(uncompressedSize, n);
+
+                // Uncompressed chunks still have to go through the
+                // dictionary since the next LZMA chunk may refer to them.
+                if (!isLZMAChunk) {
+                    lz.copyUncompressed(in, skipSizeMax);
+                } else {
+                    lz.setLimit(skipSizeMax);
+                    lzma.decode();
+                }
+
+                int skippedSize = lz.discard(check);
+                n -= skippedSize;
+                size += skippedSize;
+                uncompressedSize -= skippedSize;
+
+                if (uncompressedSize == 0)
+                    if (!rc.isFinished() || lz.hasPending())
+                        throw new CorruptedInputException();
+            }
+
+            return size;
+
+        } catch (IOException e) {
+            exception = e;
+            throw e;
+        }
+    }
+
     private void decodeChunkHeader() throws IOException {
         int control = in.readUnsignedByte();
 
@@ -0,0 +1,210 @@
+/*
+ * ParallelBlockEncoder
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.tukaani.xz.check.Check;
+import org.tukaani.xz.index.IndexEncoder;
+
+/**
+ * Splits the uncompressed input into Blocks of a fixed size and encodes
+ * them on a pool of worker threads. Every Block gets its own filter chain
+ * (and thus its own LZMA2 encoder) and integrity check, so the Blocks are
+ * completely independent. The encoded Blocks are written to the output
+ * stream and added to the Index in the order in which they were started.
+ * <p>
+ * At most two Blocks per thread are in flight at any time. Each of them
+ * holds up to <code>blockSize</code> bytes of input and about as much of
+ * encoded output, in addition to the memory used by the encoder itself.
+ */
+class ParallelBlockEncoder {
+    private static final int INITIAL_BUF_SIZE = 64 << 10;
+
+    private final OutputStream out;
+    private final int checkType;
+    private final IndexEncoder index;
+    private final int blockSize;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<EncodedBlock>> pending
+            = new ArrayDeque<Future<EncodedBlock>>();
+
+    private FilterEncoder[] filters;
+    private byte[] buf = null;
+    private int bufSize = 0;
+
+    ParallelBlockEncoder(OutputStream out, FilterEncoder[] filters,
+                         int checkType, IndexEncoder index,
+                         int threads, int blockSize) {
+        this.out = out;
+        this.filters = filters;
+        this.checkType = checkType;
+        this.index = index;
+        this.blockSize = blockSize;
+
+        maxPending = 2 * threads;
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "XZ encoder");
+
+                // Don't keep the VM alive if the stream is never closed.
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets the filter chain to use for the Blocks started after this call.
+     */
+    public void setFilters(FilterEncoder[] filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Returns true if there is input that hasn't been handed to
+     * a worker yet.
+     */
+    public boolean hasPendingInput() {
+        return bufSize > 0;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            // The buffer is grown on demand so that short streams
+            // don't need to allocate a full Block worth of memory.
+            if (buf == null)
+                buf = new byte[Math.min(blockSize, INITIAL_BUF_SIZE)];
+            else if (bufSize == buf.length)
+                buf = Arrays.copyOf(buf, (int)Math.min(blockSize,
+                                                       2L * buf.length));
+
+            int copySize = Math.min(buf.length - bufSize, len);
+            System.arraycopy(b, off, buf, bufSize, copySize);
+            bufSize += copySize;
+            off += copySize;
+            len -= copySize;
+
+            if (bufSize == blockSize)
+                endBlock();
+        }
+    }
+
+    /**
+     * Hands the buffered input to a worker as a Block of its own.
+     * This doesn't wait for the Block to be encoded. If there is no
+     * buffered input, this does nothing.
+     */
+    public void endBlock() throws IOException {
+        if (bufSize == 0)
+            return;
+
+        // Wait for the oldest Block first so that the amount of memory
+        // used by pending Blocks stays bounded.
+        if (pending.size() >= maxPending)
+            writeNext();
+
+        final byte[] data = buf;
+        final int size = bufSize;
+        final FilterEncoder[] blockFilters = filters;
+        buf = null;
+        bufSize = 0;
+
+        pending.add(executor.submit(new Callable<EncodedBlock>() {
+            public EncodedBlock call() throws IOException {
+                return encode(data, size, blockFilters);
+            }
+        }));
+    }
+
+    /**
+     * Ends the current Block and writes all pending Blocks to
+     * the output stream.
+     */
+    public void flush() throws IOException {
+        endBlock();
+
+        while (!pending.isEmpty())
+            writeNext();
+    }
+
+    /**
+     * Writes all pending Blocks and stops the worker threads.
+     */
+    public void finish() throws IOException {
+        flush();
+        shutdown();
+    }
+
+    /**
+     * Stops the worker threads, discarding Blocks that haven't been
+     * written yet.
+     */
+    public void shutdown() {
+        for (Future<EncodedBlock> future : pending)
+            future.cancel(false);
+
+        pending.clear();
+        executor.shutdown();
+    }
+
+    private void writeNext() throws IOException {
+        EncodedBlock block;
+        try {
+            block = pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new XZIOException(e.getCause().toString());
+        }
+
+        out.write(block.data);
+        index.add(block.unpaddedSize, block.uncompressedSize);
+    }
+
+    private EncodedBlock encode(byte[] data, int size,
+                                FilterEncoder[] blockFilters)
+            throws IOException {
+        ByteArrayOutputStream bufStream = new ByteArrayOutputStream(size / 2);
+        BlockOutputStream blockEncoder = new BlockOutputStream(
+                bufStream, blockFilters, Check.getInstance(checkType));
+        blockEncoder.write(data, 0, size);
+        blockEncoder.finish();
+
+        return new EncodedBlock(bufStream.toByteArray(),
+                                blockEncoder.getUnpaddedSize(),
+                                blockEncoder.getUncompressedSize());
+    }
+
+    private static class EncodedBlock {
+        final byte[] data;
+        final long unpaddedSize;
+        final long uncompressedSize;
+
+        EncodedBlock(byte[] data, long unpaddedSize, long uncompressedSize) {
+            this.data = data;
+            this.unpaddedSize = unpaddedSize;
+            this.uncompressedSize = uncompressedSize;
+        }
+    }
+}
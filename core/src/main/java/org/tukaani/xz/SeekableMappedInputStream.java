@@ -0,0 +1,213 @@
+/*
+ * SeekableMappedInputStream
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped file input stream with random access support.
+ * <p>
+ * This is a faster alternative to {@link SeekableFileInputStream} when
+ * the input consists of lots of small reads, like parsing the Indexes
+ * and Block Headers of a big .xz file: once the file has been mapped,
+ * reading and seeking don't need any system calls.
+ * <p>
+ * A single <code>MappedByteBuffer</code> can map at most 2&nbsp;GiB,
+ * so bigger files are mapped in several chunks. Reads that cross
+ * a chunk boundary are handled transparently.
+ * <p>
+ * The file is mapped when the stream is created and the file itself is
+ * closed right away. The mapping is released when the garbage collector
+ * collects the buffers; <code>close()</code> only drops the references
+ * to them. This class is not thread safe.
+ */
+public class SeekableMappedInputStream extends SeekableInputStream {
+    /**
+     * Default size of the mapped chunks.
+     */
+    private static final int DEFAULT_CHUNK_BITS = 30;
+
+    /**
+     * The mapped chunks of the file, or null if the stream has been closed.
+     */
+    private MappedByteBuffer[] chunks;
+
+    /**
+     * log2 of the chunk size.
+     */
+    private final int chunkBits;
+
+    /**
+     * Size of the file.
+     */
+    private final long length;
+
+    /**
+     * Current position in the file.
+     */
+    private long pos = 0;
+
+    /**
+     * Maps the specified file for reading.
+     *
+     * @param       file        the file to map
+     *
+     * @throws      IOException if the file cannot be opened or mapped
+     */
+    public SeekableMappedInputStream(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Maps the specified file for reading.
+     *
+     * @param       name        the name of the file to map
+     *
+     * @throws      IOException if the file cannot be opened or mapped
+     */
+    public SeekableMappedInputStream(String name) throws IOException {
+        this(new File(name));
+    }
+
+    /**
+     * Maps the specified file for reading in chunks of
+     * <code>1&nbsp;&lt;&lt;&nbsp;chunkBits</code> bytes.
+     * This is meant for testing the handling of chunk boundaries.
+     */
+    SeekableMappedInputStream(File file, int chunkBits) throws IOException {
+        this.chunkBits = chunkBits;
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            length = channel.size();
+
+            long chunkSize = 1L << chunkBits;
+            int chunkCount = (int)((length + chunkSize - 1) >>> chunkBits);
+            chunks = new MappedByteBuffer[chunkCount];
+
+            for (int i = 0; i < chunkCount; ++i) {
+                long off = (long)i << chunkBits;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, off,
+                                        Math.min(chunkSize, length - off));
+            }
+        } finally {
+            // The mappings stay valid after the file has been closed.
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads one byte from the mapped file.
+     */
+    public int read() throws IOException {
+        ensureOpen();
+
+        if (pos >= length)
+            return -1;
+
+        int b = chunks[(int)(pos >>> chunkBits)].get(chunkOffset(pos)) & 0xFF;
+        ++pos;
+        return b;
+    }
+
+    /**
+     * Copies up to <code>len</code> bytes from the mapped file
+     * into <code>buf</code>. This returns less than <code>len</code>
+     * bytes only at the end of the file.
+     */
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        ensureOpen();
+
+        if (len == 0)
+            return 0;
+
+        if (pos >= length)
+            return -1;
+
+        if (len > length - pos)
+            len = (int)(length - pos);
+
+        int size = 0;
+        while (size < len) {
+            MappedByteBuffer chunk = chunks[(int)(pos >>> chunkBits)];
+            int chunkPos = chunkOffset(pos);
+            int copySize = Math.min(len - size, chunk.limit() - chunkPos);
+
+            chunk.position(chunkPos);
+            chunk.get(buf, off + size, copySize);
+
+            pos += copySize;
+            size += copySize;
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes left in the file, or
+     * <code>Integer.MAX_VALUE</code> if there are more than that.
+     */
+    public int available() throws IOException {
+        ensureOpen();
+        return (int)Math.min(Integer.MAX_VALUE, Math.max(0, length - pos));
+    }
+
+    /**
+     * Drops the references to the mapped buffers.
+     */
+    public void close() {
+        chunks = null;
+    }
+
+    /**
+     * Gets the size of the file.
+     */
+    public long length() throws IOException {
+        ensureOpen();
+        return length;
+    }
+
+    /**
+     * Gets the current position in the file.
+     */
+    public long position() throws IOException {
+        ensureOpen();
+        return pos;
+    }
+
+    /**
+     * Seeks to the specified absolute position in the file.
+     * Seeking past the end of the file is allowed; reading from there
+     * returns <code>-1</code>.
+     */
+    public void seek(long pos) throws IOException {
+        ensureOpen();
+
+        if (pos < 0)
+            throw new XZIOException("Negative seek position: " + pos);
+
+        this.pos = pos;
+    }
+
+    private int chunkOffset(long pos) {
+        return (int)(pos & ((1L << chunkBits) - 1));
+    }
+
+    private void ensureOpen() throws XZIOException {
+        if (chunks == null)
+            throw new XZIOException("Stream closed");
+    }
+}
@@ -11,9 +11,19 @@ package org.tukaani.xz;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.EOFException;
+import java.io.InterruptedIOException;
 import org.tukaani.xz.common.DecoderUtil;
 import org.tukaani.xz.common.StreamFlags;
 import org.tukaani.xz.check.Check;
@@ -29,6 +39,9 @@ import org.tukaani.xz.index.BlockInfo;
  * The Indexes from all Streams are loaded in RAM by a constructor of this
  * class. A typical .xz file has only one Stream, and parsing its Index will
  * need only three or four seeks.
+ * Parsing the Indexes reads the input a few bytes at a time, so with files
+ * that have lots of Streams or Blocks, {@link SeekableMappedInputStream}
+ * avoids a system call per read.
  * <p>
  * To make random access possible, the data in a .xz file must be splitted
  * into multiple Blocks of reasonable size. Decompression can only start at
@@ -39,11 +52,10 @@ import org.tukaani.xz.index.BlockInfo;
  * smaller Blocks mean worse compression. So one has to make a compromise
  * between random access speed and compression ratio.
  * <p>
- * Implementation note: This class uses linear search to locate the correct
- * Stream from the data structures in RAM. It was the simplest to implement
- * and should be fine as long as there aren't too many Streams. The correct
- * Block inside a Stream is located using binary search and thus is fast
- * even with a huge number of Blocks.
+ * Implementation note: This class uses binary search to locate both
+ * the correct Stream and the correct Block inside that Stream from the data
+ * structures in RAM, so seeking is fast even with a huge number of Streams
+ * and Blocks.
  *
  * <h4>Memory usage</h4>
  * <p>
@@ -53,6 +65,22 @@ import org.tukaani.xz.index.BlockInfo;
  * to the next kibibyte. So unless the file has a huge number of Streams or
  * Blocks, these don't take significant amount of memory.
  *
+ * <h4>Parallel read-ahead</h4>
+ * <p>
+ * Decompression is single-threaded by default. With
+ * {@link #setReadAhead(ExecutorService, int) setReadAhead}, Blocks that
+ * follow the one being read are decompressed in advance on an executor
+ * while reading forward, so that multi-Block files (such as those created
+ * by multithreaded compression) can be decompressed using several cores.
+ *
+ * <h4>Block cache</h4>
+ * <p>
+ * Seeking normally decompresses the target Block again from its beginning.
+ * With {@link #setBlockCacheSize(long) setBlockCacheSize}, recently
+ * decompressed Blocks are kept in memory up to the given number of bytes,
+ * so that random access that keeps returning to the same Blocks doesn't
+ * need to decompress them again.
+ *
  * <h4>Creating random-accessible .xz files</h4>
  * <p>
  * When using {@link XZOutputStream}, a new Block can be started by calling
@@ -70,10 +98,17 @@ import org.tukaani.xz.index.BlockInfo;
  * individual Blocks.
  *
  * @see SeekableFileInputStream
+ * @see SeekableMappedInputStream
  * @see XZInputStream
  * @see XZOutputStream
  */
 public class SeekableXZInputStream extends SeekableInputStream {
+    /**
+     * Largest uncompressed Block size that can be decompressed into
+     * a single buffer for read-ahead.
+     */
+    private static final long READ_AHEAD_SIZE_MAX = Integer.MAX_VALUE - 8;
+
     /**
      * The input stream containing XZ compressed data.
      */
@@ -144,9 +179,44 @@ public class SeekableXZInputStream extends SeekableInputStream {
     private final boolean verifyCheck;
 
     /**
-     * Decoder of the current XZ Block, if any.
+     * Decoder of the current XZ Block, if any. With read-ahead enabled,
+     * this reads from an already decompressed copy of the Block.
+     */
+    private InputStream blockDecoder = null;
+
+    /**
+     * Executor that decompresses Blocks in advance, or null if read-ahead
+     * is disabled.
      */
-    private BlockInputStream blockDecoder = null;
+    private ExecutorService readAheadExecutor = null;
+
+    /**
+     * Maximum number of Blocks to decompress in advance.
+     */
+    private int readAheadBlocks = 0;
+
+    /**
+     * Blocks being decompressed in advance. These are always consecutive
+     * Blocks that follow the Block that was last decompressed.
+     */
+    private final ArrayDeque<PendingBlock> readAheadQueue
+            = new ArrayDeque<PendingBlock>();
+
+    /**
+     * Information about the last Block that was queued for read-ahead.
+     */
+    private final BlockInfo readAheadBlockInfo;
+
+    /**
+     * Number of the Block whose decoder was initialized last, or -1 if
+     * there is no such Block. This is used to detect reading forward.
+     */
+    private int lastDecodedBlock = -1;
+
+    /**
+     * Recently decompressed Blocks, or null if the Block cache is disabled.
+     */
+    private BlockCache blockCache = null;
 
     /**
      * Current uncompressed position.
@@ -456,6 +526,7 @@ public class SeekableXZInputStream extends SeekableInputStream {
         // queriedBlockInfo needs to be allocated too. The Stream used for
         // initialization doesn't matter though.
         queriedBlockInfo = new BlockInfo(first);
+        readAheadBlockInfo = new BlockInfo(first);
     }
 
     /**
@@ -603,6 +674,65 @@ public class SeekableXZInputStream extends SeekableInputStream {
         return queriedBlockInfo.blockNumber;
     }
 
+    /**
+     * Enables or disables decompressing Blocks in advance.
+     * <p>
+     * When reading forward from one Block into the next, up to
+     * <code>blocks</code> of the following Blocks are decompressed
+     * concurrently on <code>executor</code>. The compressed data is read
+     * from the underlying stream on the calling thread, so the underlying
+     * stream doesn't need to be thread safe. Random access doesn't trigger
+     * read-ahead, so seeking around in the file doesn't waste work on
+     * Blocks that won't be read.
+     * <p>
+     * Each Block is decompressed into a buffer of its own, so up to
+     * <code>blocks&nbsp;+&nbsp;1</code> times the uncompressed size of
+     * the largest Block (see <code>getLargestBlockSize</code>) of memory
+     * is needed in addition to one decoder per concurrently running task.
+     * Blocks that are too big to be buffered are decompressed the usual way.
+     * <p>
+     * The executor isn't shut down by this class. Blocks still being
+     * decompressed in advance are cancelled when read-ahead is disabled or
+     * reconfigured and when the stream is closed.
+     *
+     * @param   executor    executor to decompress Blocks on, or
+     *                      <code>null</code> to disable read-ahead
+     *
+     * @param   blocks      maximum number of Blocks to decompress
+     *                      in advance; zero disables read-ahead
+     *
+     * @throws  IllegalArgumentException if <code>blocks</code> is negative
+     */
+    public void setReadAhead(ExecutorService executor, int blocks) {
+        if (blocks < 0)
+            throw new IllegalArgumentException(
+                    "Negative read-ahead Block count: " + blocks);
+
+        cancelReadAhead();
+        readAheadExecutor = blocks > 0 ? executor : null;
+        readAheadBlocks = blocks;
+        lastDecodedBlock = -1;
+    }
+
+    /**
+     * Sets the maximum amount of memory used for caching decompressed
+     * Blocks. The least recently used Blocks are dropped first when
+     * the cache is full. Blocks bigger than the cache are never cached.
+     * Setting the size discards everything cached so far.
+     *
+     * @param   bytes       maximum total uncompressed size of the cached
+     *                      Blocks; zero disables the cache
+     *
+     * @throws  IllegalArgumentException if <code>bytes</code> is negative
+     */
+    public void setBlockCacheSize(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException(
+                    "Negative Block cache size: " + bytes);
+
+        blockCache = bytes > 0 ? new BlockCache(bytes) : null;
+    }
+
     /**
      * Decompresses the next byte from this input stream.
      *
@@ -677,8 +807,13 @@ public class SeekableXZInputStream extends SeekableInputStream {
             while (len > 0) {
                 if (blockDecoder == null) {
                     seek();
-                    if (endReached)
+                    if (endReached) {
+                        // A file without Blocks ends before the first read.
+                        if (size == 0)
+                            return -1;
+
                         break;
+                    }
                 }
 
                 int ret = blockDecoder.read(buf, off, len);
@@ -738,6 +873,8 @@ public class SeekableXZInputStream extends SeekableInputStream {
      * @throws  IOException if thrown by <code>in.close()</code>
      */
     public void close() throws IOException {
+        cancelReadAhead();
+
         if (in != null) {
             try {
                 in.close();
@@ -862,9 +999,6 @@ public class SeekableXZInputStream extends SeekableInputStream {
         // yet. (Decoding of a Block won't be started until at least one
         // byte will also be read from it.)
         if (!(curPos > curBlockInfo.uncompressedOffset && curPos <= seekPos)) {
-            // Seek to the beginning of the Block.
-            in.seek(curBlockInfo.compressedOffset);
-
             // Since it is possible that this Block is from a different
             // Stream than the previous Block, initialize a new Check.
             check = Check.getInstance(curBlockInfo.getCheckType());
@@ -896,14 +1030,25 @@ public class SeekableXZInputStream extends SeekableInputStream {
             throw new IndexOutOfBoundsException(
                     "Invalid uncompressed position: " + pos);
 
-        // Locate the Stream that contains the target position.
-        IndexDecoder index;
-        for (int i = 0; ; ++i) {
-            index = streams.get(i);
-            if (index.hasUncompressedOffset(pos))
-                break;
+        // Locate the Stream that contains the target position. The Streams
+        // are stored last Stream first, so their offsets decrease with
+        // the list index. Empty Streams share the offset of the next
+        // Stream and are never chosen because that Stream comes first.
+        int left = 0;
+        int right = streams.size() - 1;
+
+        while (left < right) {
+            int i = left + (right - left) / 2;
+
+            if (streams.get(i).getUncompressedOffset() > pos)
+                left = i + 1;
+            else
+                right = i;
         }
 
+        IndexDecoder index = streams.get(left);
+        assert index.hasUncompressedOffset(pos);
+
         // Locate the Block from the Stream that contains the target position.
         index.locateBlock(info, pos);
 
@@ -928,28 +1073,220 @@ public class SeekableXZInputStream extends SeekableInputStream {
             return;
 
         // Search the Stream that contains the given Block and then
-        // search the Block from that Stream.
-        for (int i = 0; ; ++i) {
-            IndexDecoder index = streams.get(i);
-            if (index.hasRecord(blockNumber)) {
-                index.setBlockInfo(info, blockNumber);
-                return;
-            }
+        // search the Block from that Stream. This works the same way
+        // as the search in locateBlockByPos.
+        int left = 0;
+        int right = streams.size() - 1;
+
+        while (left < right) {
+            int i = left + (right - left) / 2;
+
+            if (streams.get(i).getRecordOffset() > blockNumber)
+                left = i + 1;
+            else
+                right = i;
         }
+
+        IndexDecoder index = streams.get(left);
+        assert index.hasRecord(blockNumber);
+        index.setBlockInfo(info, blockNumber);
     }
 
     /**
-     * Initializes a new BlockInputStream. This is a helper function for
+     * Initializes a new decoder for the Block pointed by
+     * <code>curBlockInfo</code>. This is a helper function for
      * <code>seek()</code>.
      */
     private void initBlockDecoder() throws IOException {
+        // Set it to null first so that GC can collect it if memory
+        // runs tight when initializing a new decoder.
+        blockDecoder = null;
+
+        boolean forward = curBlockInfo.blockNumber == lastDecodedBlock + 1;
+        lastDecodedBlock = curBlockInfo.blockNumber;
+
+        if (isBuffered(curBlockInfo.uncompressedSize, forward)) {
+            blockDecoder = new ByteArrayInputStream(getDecodedBlock(forward));
+            return;
+        }
+
+        // Anything queued for read-ahead is for some other part of the file.
+        cancelReadAhead();
+
+        // Read-ahead may have moved the underlying stream, so always
+        // seek to the beginning of the Block.
+        in.seek(curBlockInfo.compressedOffset);
+        blockDecoder = newBlockInputStream(in, check,
+                                           curBlockInfo.unpaddedSize,
+                                           curBlockInfo.uncompressedSize);
+    }
+
+    /**
+     * Returns true if a Block of the given uncompressed size is decompressed
+     * into a buffer instead of being streamed from the underlying stream.
+     * Without the Block cache, only reading forward is worth buffering
+     * because a seek usually needs just the beginning of the Block.
+     */
+    private boolean isBuffered(long uncompressedSize, boolean forward) {
+        if (uncompressedSize > READ_AHEAD_SIZE_MAX)
+            return false;
+
+        return (readAheadExecutor != null && forward)
+               || (blockCache != null && blockCache.canHold(uncompressedSize));
+    }
+
+    /**
+     * Gets the decompressed contents of the Block pointed by
+     * <code>curBlockInfo</code>, either from the Block cache, from the
+     * read-ahead queue, or by decompressing it on the calling thread.
+     * The following Blocks are queued for read-ahead if reading forward.
+     */
+    private byte[] getDecodedBlock(boolean forward) throws IOException {
+        int blockNumber = curBlockInfo.blockNumber;
+
+        PendingBlock pending = readAheadQueue.peekFirst();
+        if (pending != null && pending.blockNumber == blockNumber) {
+            readAheadQueue.removeFirst();
+        } else {
+            // Anything queued is for some other part of the file.
+            cancelReadAhead();
+            pending = null;
+        }
+
+        byte[] buf = blockCache == null ? null : blockCache.get(blockNumber);
+
+        // Read the compressed Block before queueing the following Blocks
+        // because that moves the underlying stream.
+        byte[] compressed = null;
+        if (buf == null && pending == null)
+            compressed = readCompressedBlock(curBlockInfo);
+
+        if (readAheadExecutor != null && (forward || pending != null))
+            queueReadAhead(blockNumber);
+
+        if (buf != null) {
+            if (pending != null)
+                pending.result.cancel(false);
+
+            return buf;
+        }
+
+        if (pending != null)
+            buf = getResult(pending.result);
+        else
+            buf = decodeBlock(compressed, curBlockInfo.getCheckType(),
+                              curBlockInfo.unpaddedSize,
+                              curBlockInfo.uncompressedSize);
+
+        if (blockCache != null)
+            blockCache.put(blockNumber, buf);
+
+        return buf;
+    }
+
+    /**
+     * Queues Blocks following the given Block for read-ahead until the
+     * queue is full, the end of the file is reached, or a Block is too big
+     * to be buffered.
+     */
+    private void queueReadAhead(int blockNumber) throws IOException {
+        int next = blockNumber + 1 + readAheadQueue.size();
+
+        while (readAheadQueue.size() < readAheadBlocks && next < blockCount) {
+            locateBlockByNumber(readAheadBlockInfo, next);
+            if (readAheadBlockInfo.uncompressedSize > READ_AHEAD_SIZE_MAX)
+                break;
+
+            final byte[] compressed = readCompressedBlock(readAheadBlockInfo);
+            final int checkType = readAheadBlockInfo.getCheckType();
+            final long unpaddedSize = readAheadBlockInfo.unpaddedSize;
+            final long uncompressedSize = readAheadBlockInfo.uncompressedSize;
+
+            Future<byte[]> result = readAheadExecutor.submit(
+                    new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return decodeBlock(compressed, checkType, unpaddedSize,
+                                       uncompressedSize);
+                }
+            });
+
+            readAheadQueue.addLast(new PendingBlock(next, result));
+            ++next;
+        }
+    }
+
+    /**
+     * Cancels the Blocks queued for read-ahead.
+     */
+    private void cancelReadAhead() {
+        for (PendingBlock pending : readAheadQueue)
+            pending.result.cancel(false);
+
+        readAheadQueue.clear();
+    }
+
+    /**
+     * Reads the whole compressed Block, including the Block Header,
+     * Block Padding, and Check, from the underlying stream.
+     */
+    private byte[] readCompressedBlock(BlockInfo info) throws IOException {
+        byte[] buf = new byte[(int)((info.unpaddedSize + 3) & ~3)];
+        in.seek(info.compressedOffset);
+        new DataInputStream(in).readFully(buf);
+        return buf;
+    }
+
+    /**
+     * Decompresses a Block that has been read into memory. This may be
+     * called from any thread.
+     */
+    private byte[] decodeBlock(byte[] compressed, int checkType,
+                               long unpaddedSize, long uncompressedSize)
+            throws IOException {
+        BlockInputStream decoder = newBlockInputStream(
+                new ByteArrayInputStream(compressed),
+                Check.getInstance(checkType),
+                unpaddedSize, uncompressedSize);
+
+        byte[] buf = new byte[(int)uncompressedSize];
+        new DataInputStream(decoder).readFully(buf);
+
+        // Reading the end of the Block verifies the Check.
+        if (decoder.read() != -1)
+            throw new CorruptedInputException();
+
+        return buf;
+    }
+
+    /**
+     * Waits for a Block being decompressed in advance.
+     */
+    private static byte[] getResult(Future<byte[]> result)
+            throws IOException {
         try {
-            // Set it to null first so that GC can collect it if memory
-            // runs tight when initializing a new BlockInputStream.
-            blockDecoder = null;
-            blockDecoder = new BlockInputStream(
-                    in, check, verifyCheck, memoryLimit,
-                    curBlockInfo.unpaddedSize, curBlockInfo.uncompressedSize);
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new XZIOException(e.getCause().toString());
+        }
+    }
+
+    /**
+     * Creates a new BlockInputStream, converting the exceptions that
+     * need to take this class into account.
+     */
+    private BlockInputStream newBlockInputStream(
+            InputStream blockIn, Check blockCheck,
+            long unpaddedSize, long uncompressedSize) throws IOException {
+        try {
+            return new BlockInputStream(blockIn, blockCheck, verifyCheck,
+                                        memoryLimit, unpaddedSize,
+                                        uncompressedSize);
         } catch (MemoryLimitException e) {
             // BlockInputStream doesn't know how much memory we had
             // already needed so we need to recreate the exception.
@@ -962,4 +1299,59 @@ public class SeekableXZInputStream extends SeekableInputStream {
             throw new CorruptedInputException();
         }
     }
+
+    /**
+     * Decompressed Blocks in least recently used order, limited by their
+     * total size.
+     */
+    private static class BlockCache {
+        private final LinkedHashMap<Integer, byte[]> blocks
+                = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+        private final long maxSize;
+        private long size = 0;
+
+        BlockCache(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        boolean canHold(long blockSize) {
+            return blockSize <= maxSize;
+        }
+
+        byte[] get(int blockNumber) {
+            return blocks.get(blockNumber);
+        }
+
+        void put(int blockNumber, byte[] buf) {
+            if (!canHold(buf.length))
+                return;
+
+            byte[] old = blocks.put(blockNumber, buf);
+            if (old != null)
+                size -= old.length;
+
+            size += buf.length;
+
+            // The new Block is the most recently used one and fits into
+            // the cache by itself, so it won't be evicted.
+            Iterator<byte[]> it = blocks.values().iterator();
+            while (size > maxSize) {
+                size -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * A Block being decompressed in advance.
+     */
+    private static class PendingBlock {
+        final int blockNumber;
+        final Future<byte[]> result;
+
+        PendingBlock(int blockNumber, Future<byte[]> result) {
+            this.blockNumber = blockNumber;
+            this.result = result;
+        }
+    }
 }
@@ -46,7 +46,7 @@ public class SingleXZInputStream extends InputStream {
     private final Check check;
     private final boolean verifyCheck;
     private BlockInputStream blockDecoder = null;
-    private final IndexHash indexHash = new IndexHash();
+    private final IndexHash indexHash;
     private boolean endReached = false;
     private IOException exception = null;
 
@@ -152,8 +152,8 @@ public class SingleXZInputStream extends InputStream {
      * </ul>
      * <p>
      * <code>verifyCheck</code> only affects the integrity check of
-     * the actual compressed data. The CRC32 fields in the headers
-     * are always verified.
+     * the actual compressed data and the hash and CRC32 of the Index
+     * field. The CRC32 fields in the headers are always verified.
      *
      * @param       in          input stream from which XZ-compressed
      *                          data is read
@@ -194,6 +194,7 @@ public class SingleXZInputStream extends InputStream {
         this.in = in;
         this.memoryLimit = memoryLimit;
         this.verifyCheck = verifyCheck;
+        indexHash = new IndexHash(verifyCheck);
         streamHeaderFlags = DecoderUtil.decodeStreamHeader(streamHeader);
         check = Check.getInstance(streamHeaderFlags.checkType);
     }
@@ -328,6 +329,75 @@ public class SingleXZInputStream extends InputStream {
         return size;
     }
 
+    /**
+     * Skips <code>n</code> bytes of uncompressed data.
+     * <p>
+     * When the Block uses only the LZMA2 filter, the skipped data is
+     * decoded but never copied to a temporary buffer. The integrity
+     * check is still calculated unless it was disabled in the constructor.
+     *
+     * @param       n           maximum number of uncompressed bytes to skip
+     *
+     * @return      number of bytes skipped, or <code>0</code> if
+     *              the end of the compressed stream was reached
+     *
+     * @throws      CorruptedInputException
+     * @throws      UnsupportedOptionsException
+     * @throws      MemoryLimitException
+     *
+     * @throws      XZIOException if the stream has been closed
+     *
+     * @throws      EOFException
+     *                          compressed input is truncated or corrupt
+     *
+     * @throws      IOException may be thrown by <code>in</code>
+     */
+    public long skip(long n) throws IOException {
+        if (in == null)
+            throw new XZIOException("Stream closed");
+
+        if (exception != null)
+            throw exception;
+
+        if (n <= 0 || endReached)
+            return 0;
+
+        long size = 0;
+
+        try {
+            while (n > 0) {
+                if (blockDecoder == null) {
+                    try {
+                        blockDecoder = new BlockInputStream(
+                                in, check, verifyCheck, memoryLimit, -1, -1);
+                    } catch (IndexIndicatorException e) {
+                        indexHash.validate(in);
+                        validateStreamFooter();
+                        endReached = true;
+                        return size;
+                    }
+                }
+
+                long ret = blockDecoder.skip(n);
+
+                if (ret > 0) {
+                    size += ret;
+                    n -= ret;
+                } else {
+                    indexHash.add(blockDecoder.getUnpaddedSize(),
+                                  blockDecoder.getUncompressedSize());
+                    blockDecoder = null;
+                }
+            }
+        } catch (IOException e) {
+            exception = e;
+            if (size == 0)
+                throw e;
+        }
+
+        return size;
+    }
+
     private void validateStreamFooter() throws IOException {
         byte[] buf = new byte[DecoderUtil.STREAM_HEADER_SIZE];
         new DataInputStream(in).readFully(buf);
@@ -50,6 +50,13 @@ import org.tukaani.xz.index.IndexEncoder;
  *                    + " KiB");
  * XZOutputStream outxz = new XZOutputStream(outfile, options);
  * </pre></blockquote>
+ * <p>
+ * Compressing with four threads in Blocks of 3&nbsp;MiB, similar to
+ * <code>xz -T4</code> with the default preset:
+ * <p><blockquote><pre>
+ * XZOutputStream outxz = new XZOutputStream(outfile, new LZMA2Options(),
+ *                                           XZ.CHECK_CRC64, 4, 3 << 20);
+ * </pre></blockquote>
  */
 public class XZOutputStream extends FinishableOutputStream {
     private OutputStream out;
@@ -58,6 +65,7 @@ public class XZOutputStream extends FinishableOutputStream {
     private final IndexEncoder index = new IndexEncoder();
 
     private BlockOutputStream blockEncoder = null;
+    private ParallelBlockEncoder parallelEncoder = null;
     private FilterEncoder[] filters;
 
     /**
@@ -169,6 +177,96 @@ public class XZOutputStream extends FinishableOutputStream {
         encodeStreamHeader();
     }
 
+    /**
+     * Creates a new multithreaded XZ compressor using one filter and
+     * the specified integrity check type. This constructor is equivalent
+     * to passing a single-member FilterOptions array to
+     * <code>XZOutputStream(OutputStream, FilterOptions[], int, int, int)</code>.
+     *
+     * @param       out         output stream to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC32
+     *
+     * @param       threads     number of threads to compress with
+     *
+     * @param       blockSize   size of the uncompressed data in each
+     *                          XZ Block
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain, thread count,
+     *                          or Block size
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public XZOutputStream(OutputStream out, FilterOptions filterOptions,
+                          int checkType, int threads, int blockSize)
+            throws IOException {
+        this(out, new FilterOptions[] { filterOptions }, checkType,
+             threads, blockSize);
+    }
+
+    /**
+     * Creates a new multithreaded XZ compressor using 1-4 filters and
+     * the specified integrity check type.
+     * <p>
+     * The input is split into XZ Blocks of <code>blockSize</code> bytes
+     * which are compressed independently on <code>threads</code> worker
+     * threads, each with an encoder of its own. The Blocks are written
+     * in order, so the output is a regular single-Stream .xz file that
+     * can also be decompressed with random access.
+     * <p>
+     * Each thread needs the encoder memory of the filter chain plus
+     * about four times <code>blockSize</code> for the input and output
+     * buffers of the Blocks in flight. A Block size of about three times
+     * the LZMA2 dictionary size (what <code>xz -T</code> uses) keeps
+     * the compression ratio close to that of a single Block.
+     * <p>
+     * <code>endBlock()</code> hands the data written so far to a worker
+     * without waiting for it to be compressed. <code>flush()</code> waits
+     * for all pending Blocks, so calling it often limits parallelism.
+     *
+     * @param       out         output stream to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC32
+     *
+     * @param       threads     number of threads to compress with
+     *
+     * @param       blockSize   size of the uncompressed data in each
+     *                          XZ Block
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain, thread count,
+     *                          or Block size
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public XZOutputStream(OutputStream out, FilterOptions[] filterOptions,
+                          int checkType, int threads, int blockSize)
+            throws IOException {
+        this(out, filterOptions, checkType);
+
+        if (threads < 1)
+            throw new UnsupportedOptionsException(
+                    "Thread count must be at least 1: " + threads);
+
+        if (blockSize < 1)
+            throw new UnsupportedOptionsException(
+                    "Block size must be at least 1: " + blockSize);
+
+        parallelEncoder = new ParallelBlockEncoder(out, filters, checkType,
+                                                   index, threads, blockSize);
+    }
+
     /**
      * Updates the filter chain with a single filter.
      * This is equivalent to passing a single-member FilterOptions array
@@ -205,7 +303,8 @@ public class XZOutputStream extends FinishableOutputStream {
      */
     public void updateFilters(FilterOptions[] filterOptions)
             throws XZIOException {
-        if (blockEncoder != null)
+        if (blockEncoder != null || (parallelEncoder != null
+                                     && parallelEncoder.hasPendingInput()))
             throw new UnsupportedOptionsException("Changing filter options "
                     + "in the middle of a XZ Block not implemented");
 
@@ -222,6 +321,9 @@ public class XZOutputStream extends FinishableOutputStream {
 
         RawCoder.validate(newFilters);
         filters = newFilters;
+
+        if (parallelEncoder != null)
+            parallelEncoder.setFilters(newFilters);
     }
 
     /**
@@ -276,6 +378,11 @@ public class XZOutputStream extends FinishableOutputStream {
             throw new XZIOException("Stream finished or closed");
 
         try {
+            if (parallelEncoder != null) {
+                parallelEncoder.write(buf, off, len);
+                return;
+            }
+
             if (blockEncoder == null)
                 blockEncoder = new BlockOutputStream(out, filters, check);
 
@@ -318,10 +425,16 @@ public class XZOutputStream extends FinishableOutputStream {
         if (finished)
             throw new XZIOException("Stream finished or closed");
 
-        // NOTE: Once there is threading with multiple Blocks, it's possible
-        // that this function will be more like a barrier that returns
-        // before the last Block has been finished.
-        if (blockEncoder != null) {
+        // In the multithreaded mode this is more like a barrier that
+        // returns before the last Block has been finished.
+        if (parallelEncoder != null) {
+            try {
+                parallelEncoder.endBlock();
+            } catch (IOException e) {
+                exception = e;
+                throw e;
+            }
+        } else if (blockEncoder != null) {
             try {
                 blockEncoder.finish();
                 index.add(blockEncoder.getUnpaddedSize(),
@@ -347,6 +460,9 @@ public class XZOutputStream extends FinishableOutputStream {
      * Some filters don't support flushing. If the filter chain has
      * such a filter, <code>flush()</code> will call <code>endBlock()</code>
      * before flushing.
+     * <p>
+     * In the multithreaded mode, <code>flush()</code> always ends
+     * the current Block and waits for all pending Blocks to be written.
      *
      * @throws      XZIOException
      *                          XZ Stream has grown too big
@@ -364,7 +480,12 @@ public class XZOutputStream extends FinishableOutputStream {
             throw new XZIOException("Stream finished or closed");
 
         try {
-            if (blockEncoder != null) {
+            if (parallelEncoder != null) {
+                // Blocks are compressed independently, so flushing
+                // is always done by ending the current Block.
+                parallelEncoder.flush();
+                out.flush();
+            } else if (blockEncoder != null) {
                 if (filtersSupportFlushing) {
                     // This will eventually call out.flush() so
                     // no need to do it here again.
@@ -407,6 +528,9 @@ public class XZOutputStream extends FinishableOutputStream {
             endBlock();
 
             try {
+                if (parallelEncoder != null)
+                    parallelEncoder.finish();
+
                 index.encode(out);
                 encodeStreamFooter();
             } catch (IOException e) {
@@ -442,6 +566,10 @@ public class XZOutputStream extends FinishableOutputStream {
                 finish();
             } catch (IOException e) {}
 
+            // Stop the worker threads in case finishing failed.
+            if (parallelEncoder != null)
+                parallelEncoder.shutdown();
+
             try {
                 out.close();
             } catch (IOException e) {
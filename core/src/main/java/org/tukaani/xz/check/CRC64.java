@@ -0,0 +1,98 @@
+/*
+ * CRC64
+ *
+ * Author: Lasse Collin <lasse.collin@tukaani.org>
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz.check;
+
+public class CRC64 extends Check {
+    private static final long poly = 0xC96C5795D7870F42L;
+
+    // Slicing-by-8 tables: crcTable[0] is the usual byte-at-a-time table
+    // and crcTable[k][b] is the CRC of the byte b followed by k zero bytes.
+    private static final long[][] crcTable = new long[8][256];
+
+    private long crc = -1;
+
+    static {
+        for (int b = 0; b < 256; ++b) {
+                long r = b;
+                for (int i = 0; i < 8; ++i) {
+                        if ((r & 1) == 1)
+                                r = (r >>> 1) ^ poly;
+                        else
+                                r >>>= 1;
+                }
+
+                crcTable[0][b] = r;
+        }
+
+        for (int k = 1; k < crcTable.length; ++k)
+                for (int b = 0; b < 256; ++b) {
+                        long r = crcTable[k - 1][b];
+                        crcTable[k][b] = crcTable[0][(int)r & 0xFF] ^ (r >>> 8);
+                }
+    }
+
+    public CRC64() {
+        size = 8;
+        name = "CRC64";
+    }
+
+    public void update(byte[] buf, int off, int len) {
+        final long[] t0 = crcTable[0];
+        final long[] t1 = crcTable[1];
+        final long[] t2 = crcTable[2];
+        final long[] t3 = crcTable[3];
+        final long[] t4 = crcTable[4];
+        final long[] t5 = crcTable[5];
+        final long[] t6 = crcTable[6];
+        final long[] t7 = crcTable[7];
+
+        long c = crc;
+        int end = off + len;
+
+        // Eight bytes per iteration: the input is XORed into the CRC as
+        // one little endian 64-bit word and each of its bytes is then
+        // looked up from the table matching its distance from the end.
+        for (int end8 = end - 7; off < end8; off += 8) {
+            c ^= (buf[off] & 0xFFL)
+                 | ((buf[off + 1] & 0xFFL) << 8)
+                 | ((buf[off + 2] & 0xFFL) << 16)
+                 | ((buf[off + 3] & 0xFFL) << 24)
+                 | ((buf[off + 4] & 0xFFL) << 32)
+                 | ((buf[off + 5] & 0xFFL) << 40)
+                 | ((buf[off + 6] & 0xFFL) << 48)
+                 | ((buf[off + 7] & 0xFFL) << 56);
+
+            c = t7[(int)c & 0xFF]
+                ^ t6[(int)(c >>> 8) & 0xFF]
+                ^ t5[(int)(c >>> 16) & 0xFF]
+                ^ t4[(int)(c >>> 24) & 0xFF]
+                ^ t3[(int)(c >>> 32) & 0xFF]
+                ^ t2[(int)(c >>> 40) & 0xFF]
+                ^ t1[(int)(c >>> 48) & 0xFF]
+                ^ t0[(int)(c >>> 56)];
+        }
+
+        while (off < end)
+            c = t0[(buf[off++] ^ (int)c) & 0xFF] ^ (c >>> 8);
+
+        crc = c;
+    }
+
+    public byte[] finish() {
+        long value = ~crc;
+        crc = -1;
+
+        byte[] buf = new byte[8];
+        for (int i = 0; i < buf.length; ++i)
+            buf[i] = (byte)(value >> (i * 8));
+
+        return buf;
+    }
+}
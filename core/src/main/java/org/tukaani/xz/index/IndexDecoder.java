@@ -164,6 +164,14 @@ public class IndexDecoder extends IndexBase {
         return largestBlockSize;
     }
 
+    public long getUncompressedOffset() {
+        return uncompressedOffset;
+    }
+
+    public int getRecordOffset() {
+        return recordOffset;
+    }
+
     public boolean hasUncompressedOffset(long pos) {
         return pos >= uncompressedOffset
                && pos < uncompressedOffset + uncompressedSum;
@@ -23,8 +23,20 @@ public class IndexHash extends IndexBase {
     private org.tukaani.xz.check.Check hash;
 
     public IndexHash() {
+        this(true);
+    }
+
+    /**
+     * If <code>verify</code> is <code>false</code>, only the sizes of
+     * the Records are tracked: the Records aren't hashed and the hash
+     * and CRC32 of the Index aren't verified in <code>validate</code>.
+     */
+    public IndexHash(boolean verify) {
         super(new CorruptedInputException());
 
+        if (!verify)
+            return;
+
         try {
             hash = new org.tukaani.xz.check.SHA256();
         } catch (java.security.NoSuchAlgorithmException e) {
@@ -36,6 +48,9 @@ public class IndexHash extends IndexBase {
             throws XZIOException {
         super.add(unpaddedSize, uncompressedSize);
 
+        if (hash == null)
+            return;
+
         ByteBuffer buf = ByteBuffer.allocate(2 * 8);
         buf.putLong(unpaddedSize);
         buf.putLong(uncompressedSize);
@@ -60,7 +75,7 @@ public class IndexHash extends IndexBase {
 
         // Decode and hash the Index field and compare it to
         // the hash value calculated from the decoded Blocks.
-        IndexHash stored = new IndexHash();
+        IndexHash stored = new IndexHash(hash != null);
         for (long i = 0; i < recordCount; ++i) {
             long unpaddedSize = DecoderUtil.decodeVLI(inChecked);
             long uncompressedSize = DecoderUtil.decodeVLI(inChecked);
@@ -80,7 +95,8 @@ public class IndexHash extends IndexBase {
         if (stored.blocksSum != blocksSum
                 || stored.uncompressedSum != uncompressedSum
                 || stored.indexListSize != indexListSize
-                || !Arrays.equals(stored.hash.finish(), hash.finish()))
+                || (hash != null
+                    && !Arrays.equals(stored.hash.finish(), hash.finish())))
             throw new CorruptedInputException("XZ Index is corrupt");
 
         // Index Padding
@@ -92,7 +108,8 @@ public class IndexHash extends IndexBase {
         // CRC32
         long value = crc32.getValue();
         for (int i = 0; i < 4; ++i)
-            if (((value >>> (i * 8)) & 0xFF) != inData.readUnsignedByte())
+            if (((value >>> (i * 8)) & 0xFF) != inData.readUnsignedByte()
+                    && hash != null)
                 throw new CorruptedInputException("XZ Index is corrupt");
     }
 }
@@ -13,6 +13,7 @@ package org.tukaani.xz.lz;
 import java.io.DataInputStream;
 import java.io.IOException;
 import org.tukaani.xz.CorruptedInputException;
+import org.tukaani.xz.check.Check;
 
 public final class LZDecoder {
     private final byte[] buf;
@@ -123,4 +124,22 @@ public final class LZDecoder {
 
         return copySize;
     }
+
+    /**
+     * Like <code>flush</code>, but the decoded bytes are only passed to
+     * <code>check</code> (if it isn't <code>null</code>) instead of being
+     * copied out of the dictionary.
+     */
+    public int discard(Check check) {
+        int discardSize = pos - start;
+        if (check != null)
+            check.update(buf, start, discardSize);
+
+        if (pos == buf.length)
+            pos = 0;
+
+        start = pos;
+
+        return discardSize;
+    }
 }
@@ -0,0 +1,132 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DirectoryEntriesTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+    private static final int GENERATED_ENTRY_COUNT = 10000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testByUrl() throws Exception {
+        ZimFile zimFile = new ZimFile(RAW_DIR + TEST_ZIM_FILE);
+        try (DirectoryEntries entries = DirectoryEntries.byUrl(zimFile);
+             ZimReader reader = new ZimReader(zimFile)) {
+            int index = 0;
+            DirectoryEntry previous = null;
+            for (DirectoryEntry entry : entries) {
+                assertEquals(entry.getUrlListIndex(), index++);
+                DirectoryEntry lookedUp = reader.getEntryForUrl(entry.getNamespace() + "/" + entry.getUrl());
+                assertEquals(lookedUp.getUrlListIndex(), entry.getUrlListIndex());
+                assertEquals(lookedUp.getTitle(), entry.getTitle());
+                assertEquals(lookedUp.getClass(), entry.getClass());
+                if (previous != null) {
+                    assertTrue(compare(previous.getNamespace(), previous.getUrl(),
+                            entry.getNamespace(), entry.getUrl()) < 0);
+                }
+                previous = entry;
+            }
+            assertEquals(index, zimFile.getArticleCount());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCorruptUrlPointer() throws Exception {
+        File file = tempFolder.newFile("corrupt.zim");
+        Files.copy(new File(RAW_DIR + TEST_ZIM_FILE).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        ZimFile zimFile = new ZimFile(file.getPath());
+        // Point the first directory entry past the end of the file.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(zimFile.getUrlPtrPos());
+            raf.writeLong(Long.reverseBytes(file.length() + 10));
+        }
+
+        try (DirectoryEntries entries = DirectoryEntries.byUrl(zimFile)) {
+            for (DirectoryEntry entry : entries) {
+                assertNotNull(entry);
+            }
+            fail("Corrupt URL pointer was not detected.");
+        } catch (UncheckedIOException e) {
+            assertEquals(e.getCause().getMessage(), "Failed to read from stream.");
+        }
+
+        try {
+            new ZimExtractor(zimFile).extract(tempFolder.newFolder("out"));
+            fail("Corrupt URL pointer was not detected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testByTitle() throws Exception {
+        ZimFile zimFile = new ZimFile(RAW_DIR + TEST_ZIM_FILE);
+        try (DirectoryEntries entries = DirectoryEntries.byTitle(zimFile)) {
+            int index = 0;
+            DirectoryEntry previous = null;
+            for (DirectoryEntry entry : entries) {
+                assertEquals(entry.getTitleListIndex(), index++);
+                if (previous != null) {
+                    assertTrue(compare(previous.getNamespace(), previous.getTitle(),
+                            entry.getNamespace(), entry.getTitle()) <= 0);
+                }
+                previous = entry;
+            }
+            assertEquals(index, zimFile.getArticleCount());
+        }
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        // Large enough to be read in several batches and split several times.
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(GENERATED_ENTRY_COUNT);
+        generator.setBlobSizes(ZimGenerator.BLOB_SIZE_UNIFORM, 16, 64);
+        generator.setCompressed(false);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+        ZimFile zimFile = new ZimFile(file.getPath());
+
+        try (DirectoryEntries entries = DirectoryEntries.byTitle(zimFile)) {
+            Object[] array = entries.stream(true).toArray();
+            assertEquals(array.length, zimFile.getArticleCount());
+            Set<Integer> urlIndices = new HashSet<>();
+            for (int i = 0; i < array.length; i++) {
+                DirectoryEntry entry = (DirectoryEntry) array[i];
+                assertEquals(entry.getTitleListIndex(), i);
+                assertTrue(urlIndices.add(entry.getUrlListIndex()));
+                if (i < GENERATED_ENTRY_COUNT) {
+                    assertEquals(entry.getTitle(), generator.getTitle(i));
+                }
+            }
+        }
+        try (DirectoryEntries entries = DirectoryEntries.byUrl(zimFile)) {
+            Object[] array = entries.stream(true).toArray();
+            int index = 0;
+            for (DirectoryEntry entry : entries) {
+                assertEquals(((DirectoryEntry) array[index]).getUrl(), entry.getUrl());
+                assertEquals(entry.getUrlListIndex(), index++);
+            }
+        }
+    }
+
+    private static int compare(char namespace1, String key1, char namespace2, String key2) {
+        return namespace1 != namespace2 ? namespace1 - namespace2 : key1.compareTo(key2);
+    }
+}
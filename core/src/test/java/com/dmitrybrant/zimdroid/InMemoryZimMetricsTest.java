@@ -0,0 +1,65 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InMemoryZimMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() throws Exception {
+        long previousEnd = 0;
+        for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = InMemoryZimMetrics.Histogram.getBucket(value);
+            long end = InMemoryZimMetrics.Histogram.getBucketEnd(bucket);
+            assertTrue(value < end || end == Long.MAX_VALUE);
+            assertTrue(end >= previousEnd);
+            // Within 1/16 of the value.
+            assertTrue(end - 1 - value <= value / 16);
+            previousEnd = end;
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() throws Exception {
+        InMemoryZimMetrics.Histogram histogram = new InMemoryZimMetrics.Histogram();
+        assertEquals(histogram.getValueAtPercentile(50), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMax(), 1000000);
+        assertEquals(histogram.getMean(), 500500, 0.001);
+        assertEquals(histogram.getValueAtPercentile(50), 500000, 500000 / 16);
+        assertEquals(histogram.getValueAtPercentile(99), 990000, 990000 / 16);
+        assertEquals(histogram.getValueAtPercentile(100), 1000000);
+
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMax(), 0);
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        InMemoryZimMetrics metrics = new InMemoryZimMetrics();
+        metrics.onCacheHit(ZimMetrics.CACHE_URL_ENTRY);
+        metrics.onCacheMiss(ZimMetrics.CACHE_CLUSTER);
+        metrics.onLookup(ZimMetrics.LOOKUP_URL, "A/index.htm", 12, 3000);
+        metrics.onClusterDecoded(5, ZimReader.COMPRESSION_TYPE_LZMA, 300, 1024, 50000);
+        metrics.onCacheEviction(ZimMetrics.CACHE_CLUSTER, 1024);
+        metrics.onRedirect(2);
+        assertEquals(metrics.getCacheHitCount(ZimMetrics.CACHE_URL_ENTRY), 1);
+        assertEquals(metrics.getCacheHitCount(ZimMetrics.CACHE_CLUSTER), 0);
+        assertEquals(metrics.getCacheMissCount(ZimMetrics.CACHE_CLUSTER), 1);
+        assertEquals(metrics.getProbeCount(), 12);
+        assertEquals(metrics.getLookupLatency().getMax(), 3000);
+        assertEquals(metrics.getCompressedBytes(), 300);
+        assertEquals(metrics.getDecodedBytes(), 1024);
+        assertEquals(metrics.getCacheEvictionCount(ZimMetrics.CACHE_CLUSTER), 1);
+        assertEquals(metrics.getRedirectHops(), 2);
+
+        metrics.reset();
+        assertEquals(metrics.getCacheHitCount(ZimMetrics.CACHE_URL_ENTRY), 0);
+        assertEquals(metrics.getLookupCount(), 0);
+    }
+}
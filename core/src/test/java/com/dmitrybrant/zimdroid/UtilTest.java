@@ -0,0 +1,44 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class UtilTest {
+
+    @Test
+    public void testCapitalize() throws Exception {
+        assertEquals(Util.capitalize("wikipedia"), "Wikipedia");
+        assertEquals(Util.capitalize("a"), "A");
+        assertEquals(Util.capitalize("Z"), "Z");
+    }
+
+    @Test
+    @SuppressWarnings("checkstyle:magicnumber")
+    public void testGetIntLe() throws Exception {
+        byte[] bytes = new byte[] { (byte)0xAA, (byte)0xBB, (byte)0xCC, (byte)0xDD };
+        assertEquals(Util.getIntLe(bytes), 0xDDCCBBAA);
+    }
+
+    @Test
+    public void testToHex() throws Exception {
+        assertEquals(Util.toHex(new byte[] { 0x01, (byte)0xAB, 0x7F }), "01ab7f");
+        assertEquals(Util.toHex(new byte[0]), "");
+    }
+
+    @Test
+    public void testSkipFully() throws Exception {
+        InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 });
+        Util.skipFully(stream, 3);
+        assertEquals(stream.read(), 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testSkipFullyPastEnd() throws Exception {
+        Util.skipFully(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 4);
+    }
+}
@@ -0,0 +1,67 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ZimCacheTest {
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        ZimCache cache = new ZimCache(300);
+        InMemoryZimMetrics metrics = new InMemoryZimMetrics();
+        cache.setMetrics(metrics);
+        cache.put("a", ZimCache.KIND_CLUSTER, 0, "a0", 100);
+        cache.put("a", ZimCache.KIND_CLUSTER, 1, "a1", 100);
+        cache.put("a", ZimCache.KIND_CLUSTER, 2, "a2", 100);
+        assertEquals(cache.get("a", ZimCache.KIND_CLUSTER, 0), "a0");
+        cache.put("a", ZimCache.KIND_CLUSTER, 3, "a3", 100);
+        assertEquals(cache.getSize(), 300);
+        assertEquals(metrics.getCacheEvictionCount(ZimMetrics.CACHE_CLUSTER), 1);
+        assertNull(cache.get("a", ZimCache.KIND_CLUSTER, 1));
+        assertEquals(cache.get("a", ZimCache.KIND_CLUSTER, 0), "a0");
+        assertEquals(cache.get("a", ZimCache.KIND_CLUSTER, 3), "a3");
+
+        // Too large to ever fit.
+        cache.put("a", ZimCache.KIND_CLUSTER, 4, "a4", 301);
+        assertNull(cache.get("a", ZimCache.KIND_CLUSTER, 4));
+        assertEquals(cache.getSize(), 300);
+    }
+
+    @Test
+    public void testFairEviction() throws Exception {
+        ZimCache cache = new ZimCache(400);
+        cache.put("a", ZimCache.KIND_URL_ENTRY, 0, "a0", 100);
+        cache.put("b", ZimCache.KIND_URL_ENTRY, 0, "b0", 100);
+        // Filling up the cache with one file evicts its own items, not the other file's item,
+        // even though that one is the least recently used.
+        for (int i = 1; i < 10; i++) {
+            cache.put("a", ZimCache.KIND_URL_ENTRY, i, "a" + i, 100);
+        }
+        assertEquals(cache.getSize(), 400);
+        assertEquals(cache.get("b", ZimCache.KIND_URL_ENTRY, 0), "b0");
+        assertEquals(cache.get("a", ZimCache.KIND_URL_ENTRY, 9), "a9");
+        assertNull(cache.get("a", ZimCache.KIND_URL_ENTRY, 0));
+
+        cache.removeAll("a");
+        assertEquals(cache.getSize(), 100);
+        assertNull(cache.get("a", ZimCache.KIND_URL_ENTRY, 9));
+        assertEquals(cache.get("b", ZimCache.KIND_URL_ENTRY, 0), "b0");
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedAcrossFiles() throws Exception {
+        ZimCache cache = new ZimCache(300);
+        cache.put("a", ZimCache.KIND_CLUSTER, 0, "a0", 100);
+        cache.put("b", ZimCache.KIND_CLUSTER, 0, "b0", 100);
+        cache.put("c", ZimCache.KIND_CLUSTER, 0, "c0", 100);
+        assertEquals(cache.get("a", ZimCache.KIND_CLUSTER, 0), "a0");
+        // Every file uses its fair share, so the least recently used item of any file goes.
+        cache.put("d", ZimCache.KIND_CLUSTER, 0, "d0", 100);
+        assertEquals(cache.getSize(), 300);
+        assertNull(cache.get("b", ZimCache.KIND_CLUSTER, 0));
+        assertEquals(cache.get("a", ZimCache.KIND_CLUSTER, 0), "a0");
+        assertEquals(cache.get("c", ZimCache.KIND_CLUSTER, 0), "c0");
+        assertEquals(cache.get("d", ZimCache.KIND_CLUSTER, 0), "d0");
+    }
+}
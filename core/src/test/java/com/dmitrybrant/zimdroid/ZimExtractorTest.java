@@ -0,0 +1,89 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ZimExtractorTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testExtract() throws Exception {
+        ZimFile zimFile = new ZimFile(RAW_DIR + TEST_ZIM_FILE);
+        File outputDir = tempFolder.newFolder("out");
+        final long[] lastProgress = new long[3];
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ZimExtractor extractor = new ZimExtractor(zimFile);
+        extractor.setPool(pool);
+        extractor.setQueueSize(4);
+        extractor.setProgressListener(new ZimExtractor.ProgressListener() {
+            @Override
+            public void onProgress(int entriesWritten, int entryCount, long bytesWritten, double bytesPerSecond) {
+                lastProgress[0] = entriesWritten;
+                lastProgress[1] = entryCount;
+                lastProgress[2] = bytesWritten;
+            }
+        });
+        try {
+            extractor.extract(outputDir);
+        } finally {
+            pool.shutdown();
+        }
+
+        int articleCount = 0;
+        long totalBytes = 0;
+        try (DirectoryEntries entries = DirectoryEntries.byUrl(zimFile);
+             ZimReader reader = new ZimReader(zimFile)) {
+            for (DirectoryEntry entry : entries) {
+                File file = new File(new File(outputDir, String.valueOf(entry.getNamespace())), entry.getUrl());
+                if (entry instanceof RedirectEntry) {
+                    continue;
+                }
+                byte[] expected = reader.getDataForUrl(entry.getNamespace() + "/" + entry.getUrl()).toByteArray();
+                assertTrue(Arrays.equals(expected, Files.readAllBytes(file.toPath())));
+                articleCount++;
+                totalBytes += expected.length;
+            }
+        }
+        assertEquals(lastProgress[0], articleCount);
+        assertEquals(lastProgress[1], articleCount);
+        assertEquals(lastProgress[2], totalBytes);
+    }
+
+    @Test(timeout = 60000)
+    public void testWriterInterrupted() throws Exception {
+        ZimFile zimFile = new ZimFile(RAW_DIR + TEST_ZIM_FILE);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ZimExtractor extractor = new ZimExtractor(zimFile);
+        extractor.setPool(pool);
+        extractor.setQueueSize(1);
+        extractor.setProgressListener(new ZimExtractor.ProgressListener() {
+            @Override
+            public void onProgress(int entriesWritten, int entryCount, long bytesWritten, double bytesPerSecond) {
+                // Called on the writer thread, which then gets interrupted while waiting for the queue.
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            extractor.extract(tempFolder.newFolder("out"));
+            fail("Interruption was not reported.");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ZimGeneratorTest {
+    private static final int ENTRY_COUNT = 2000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testGenerateCompressed() throws Exception {
+        testGenerate(true);
+    }
+
+    @Test
+    public void testGenerateUncompressed() throws Exception {
+        testGenerate(false);
+    }
+
+    private void testGenerate(boolean compressed) throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(ENTRY_COUNT);
+        generator.setRedirectRatio(0.3);
+        generator.setClusterSize(64 * 1024);
+        generator.setBlobSizes(ZimGenerator.BLOB_SIZE_LOG_NORMAL, 64, 16 * 1024);
+        generator.setCompressed(compressed);
+        generator.setLzmaPreset(1);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+
+        ZimFile zimFile = new ZimFile(file.getPath());
+        assertEquals(zimFile.getArticleCount(), ENTRY_COUNT + 5);
+        assertTrue(zimFile.getClusterCount() > 1);
+        new ZimVerifier(zimFile).verifyClusters();
+
+        try (ZimReader reader = new ZimReader(zimFile)) {
+            assertEquals(reader.getZimTitle(), "Synthetic");
+            assertEquals(reader.getMainPageTitle(), generator.getTitle(0));
+
+            for (int i = 0; i < ENTRY_COUNT; i += 97) {
+                if (generator.isRedirect(i)) {
+                    int target = generator.getRedirectTarget(i);
+                    assertEquals(reader.getNormalizedTitle(generator.getTitle(i)), generator.getTitle(target));
+                } else {
+                    byte[] content = reader.getDataForUrl("A/" + generator.getUrl(i)).toByteArray();
+                    assertEquals(content.length, generator.getBlobSize(i));
+                }
+            }
+
+            List<String> results = reader.searchByPrefix(generator.getTitle(100), 1);
+            assertEquals(results.get(0), generator.getTitle(100));
+        }
+    }
+}
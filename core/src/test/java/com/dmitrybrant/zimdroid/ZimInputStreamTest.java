@@ -0,0 +1,120 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ZimInputStreamTest {
+    private static final int FILE_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSeek() throws Exception {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(0).nextBytes(data);
+        File file = tempFolder.newFile("data.bin");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+
+        try (ZimInputStream stream = new ZimInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            // Seeks within the buffered window, both forward and backward.
+            stream.seek(100);
+            assertEquals(stream.read(), data[100] & 0xFF);
+            stream.seek(140);
+            assertEquals(stream.read(), data[140] & 0xFF);
+            stream.seek(101);
+            assertEquals(stream.read(), data[101] & 0xFF);
+
+            // A read larger than the buffer bypasses it, which must not confuse later seeks.
+            byte[] bytes = new byte[BUFFER_SIZE * 4];
+            stream.seek(1000);
+            stream.read();
+            assertEquals(stream.read(bytes, 0, bytes.length), bytes.length);
+            assertEquals(bytes[0], data[1001]);
+            assertEquals(bytes[bytes.length - 1], data[1000 + bytes.length]);
+            stream.seek(1010);
+            assertEquals(stream.read(), data[1010] & 0xFF);
+            // Reading on past the end of the buffer must continue from the right place.
+            assertEquals(stream.read(bytes, 0, BUFFER_SIZE), BUFFER_SIZE);
+            assertEquals(bytes[0], data[1011]);
+            assertEquals(bytes[BUFFER_SIZE - 1], data[1010 + BUFFER_SIZE]);
+            stream.seek(1001 + bytes.length);
+            assertEquals(stream.read(), data[1001 + bytes.length] & 0xFF);
+
+            // Random seeks in and out of the buffer.
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                int pos = random.nextInt(FILE_SIZE - 4);
+                stream.seek(pos);
+                assertEquals(stream.readIntLe(), Util.getIntLe(new byte[] { data[pos], data[pos + 1],
+                        data[pos + 2], data[pos + 3] }));
+            }
+        }
+    }
+
+    @Test
+    public void testReadString() throws Exception {
+        // Strings of varying lengths, so that they straddle buffer boundaries at different points,
+        // including multi-byte characters and strings longer than the buffer.
+        List<String> strings = new ArrayList<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = i % 10 == 0 ? random.nextInt(BUFFER_SIZE * 3) : random.nextInt(BUFFER_SIZE / 2);
+            for (int j = 0; j < length; j++) {
+                sb.append("aZ \u00fc\u65e5\ud83d\ude00".charAt(random.nextInt(5)));
+            }
+            if (i % 7 == 0) {
+                sb.append("\ud83d\ude00");
+            }
+            strings.add(sb.toString());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String string : strings) {
+            bytes.write(string.getBytes("utf-8"));
+            bytes.write(0);
+        }
+        File file = tempFolder.newFile("strings.bin");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.toByteArray());
+        }
+
+        try (ZimInputStream stream = new ZimInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            for (String string : strings) {
+                assertEquals(stream.readString(), string);
+            }
+            assertEquals(stream.read(), -1);
+
+            stream.seek(0);
+            assertEquals(stream.readString(), strings.get(0));
+            assertEquals(stream.readString(), strings.get(1));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadStringWithoutTerminator() throws Exception {
+        File file = tempFolder.newFile("unterminated.bin");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("unterminated".getBytes("utf-8"));
+        }
+        try (ZimInputStream stream = new ZimInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            stream.readString();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ZimLibraryTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+    private static final int CACHE_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSharedCache() throws Exception {
+        try (ZimLibrary library = new ZimLibrary(CACHE_SIZE);
+             ZimReader plainReader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            String id = library.add(new File(RAW_DIR + TEST_ZIM_FILE));
+            assertEquals(library.getOpenReaderCount(), 0);
+
+            for (int pass = 0; pass < 2; pass++) {
+                ZimReader reader = library.acquire(id);
+                try {
+                    for (String url : new String[] {"A/index.htm", "I/m/Ray_C._Geor.jpg", "A/Ray_Charles.html"}) {
+                        assertArrayEquals(reader.getDataForUrl(url).toByteArray(),
+                                plainReader.getDataForUrl(url).toByteArray());
+                    }
+                    assertEquals(reader.getMainPageTitle(), "Summary");
+                } finally {
+                    library.release(reader);
+                }
+                assertTrue(library.getCache().getSize() > 0);
+                assertTrue(library.getCache().getSize() <= CACHE_SIZE);
+            }
+            library.remove(id);
+            assertEquals(library.getCache().getSize(), 0);
+        }
+    }
+
+    @Test
+    public void testCloseIdleReaders() throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(200);
+        try (ZimLibrary library = new ZimLibrary(CACHE_SIZE)) {
+            library.setMaxOpenReaders(2);
+            String[] ids = new String[4];
+            for (int i = 0; i < ids.length; i++) {
+                File file = tempFolder.newFile("generated" + i + ".zim");
+                generator.generate(file);
+                ids[i] = library.add(file);
+            }
+            assertEquals(library.getArchiveIds().size(), ids.length);
+
+            ZimReader[] readers = new ZimReader[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                readers[i] = library.acquire(ids[i]);
+                assertEquals(readers[i].getMainPageTitle(), generator.getTitle(0));
+            }
+            // Readers in use stay open.
+            assertEquals(library.getOpenReaderCount(), 4);
+            for (ZimReader reader : readers) {
+                library.release(reader);
+            }
+            assertEquals(library.getOpenReaderCount(), 2);
+            // The most recently used reader is still the same.
+            ZimReader reader = library.acquire(ids[3]);
+            assertSame(reader, readers[3]);
+            library.release(reader);
+
+            library.setIdleTimeout(0);
+            assertEquals(library.getOpenReaderCount(), 0);
+            // Closed readers are opened again when needed.
+            reader = library.acquire(ids[0]);
+            assertEquals(reader.getMainPageTitle(), generator.getTitle(0));
+            library.release(reader);
+        }
+    }
+
+    @Test
+    public void testIdleTimeoutWithoutActivity() throws Exception {
+        try (ZimLibrary library = new ZimLibrary(CACHE_SIZE)) {
+            library.setIdleTimeout(100);
+            String id = library.add(new File(RAW_DIR + TEST_ZIM_FILE));
+            library.release(library.acquire(id));
+            assertEquals(library.getOpenReaderCount(), 1);
+            // The reader is closed once it times out, without any further calls.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (library.getOpenReaderCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(library.getOpenReaderCount(), 0);
+        }
+    }
+
+    @Test
+    public void testSearchByPrefix() throws Exception {
+        try (ZimLibrary library = new ZimLibrary(CACHE_SIZE)) {
+            ZimGenerator generator = new ZimGenerator();
+            List<String> ids = new ArrayList<>();
+            ids.add(library.add(new File(RAW_DIR + TEST_ZIM_FILE)));
+            // Different entry counts give different titles, which interleave.
+            for (int count : new int[] {100, 150, 1000}) {
+                generator.setEntryCount(count);
+                File file = tempFolder.newFile("generated" + count + ".zim");
+                generator.generate(file);
+                ids.add(library.add(file));
+            }
+            String prefix = generator.getTitle(0).substring(0, 1);
+
+            List<String> expected = new ArrayList<>();
+            for (String id : ids) {
+                ZimReader reader = library.acquire(id);
+                try {
+                    List<DirectoryEntry> entries = reader.searchEntriesByPrefix(prefix, 1000);
+                    for (int i = 0; i < entries.size(); i++) {
+                        assertTrue(entries.get(i).getTitle().startsWith(prefix));
+                        assertTrue(i == 0 || entries.get(i - 1).getTitle().compareTo(entries.get(i).getTitle()) <= 0);
+                        expected.add(entries.get(i).getTitle());
+                    }
+                } finally {
+                    library.release(reader);
+                }
+            }
+            Collections.sort(expected);
+            assertTrue(expected.size() > 50);
+
+            List<ZimLibrary.SearchResult> results = library.searchByPrefix(prefix, 50);
+            assertEquals(results.size(), 50);
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(results.get(i).getTitle(), expected.get(i));
+                assertTrue(ids.contains(results.get(i).getArchiveId()));
+            }
+            assertEquals(library.searchByPrefix(prefix, 10000).size(), expected.size());
+            assertTrue(library.searchByPrefix("Zzzz", 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void testSearchSkipsUnreadableFile() throws Exception {
+        try (ZimLibrary library = new ZimLibrary(CACHE_SIZE)) {
+            File damaged = tempFolder.newFile("damaged.zim");
+            library.add(damaged);
+            try {
+                library.searchByPrefix("R", 10);
+                fail("Search of an unreadable file did not fail.");
+            } catch (IOException e) {
+                // expected
+            }
+
+            String id = library.add(new File(RAW_DIR + TEST_ZIM_FILE));
+            List<ZimLibrary.SearchResult> results = library.searchByPrefix("R", 10);
+            assertFalse(results.isEmpty());
+            for (ZimLibrary.SearchResult result : results) {
+                assertEquals(result.getArchiveId(), id);
+            }
+        }
+    }
+}
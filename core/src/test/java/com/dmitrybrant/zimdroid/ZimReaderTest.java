@@ -0,0 +1,276 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ZimReaderTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+    private static final String ZIM_ZERO_BYTES = "zero_bytes.zim";
+    private static final String ZIM_CORRUPT_HEADER = "corrupt_header.zim";
+    private static final String ZIM_MALFORMED_HEADER = "malformed_header.zim";
+    private static final String ZIM_NO_CONTENT_AFTER_HEADER = "cut_off_after_header.zim";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testZimReaderMetadata() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            assertEquals(reader.getZimTitle(), "Wikipedia");
+            assertEquals(reader.getZimDescription(), "From Wikipedia, the free encyclopedia");
+            assertEquals(reader.getZimDate(), new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT).parse("2015-06-02"));
+
+            assertTrue(reader.getRandomTitle().length() > 0);
+
+            String mainTitle = reader.getMainPageTitle();
+            assertEquals(mainTitle, "Summary");
+        }
+    }
+
+    @Test
+    public void testZimReaderPrefixSearch() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            List<String> results = reader.searchByPrefix("R", 2);
+            assertEquals(results.size(), 2);
+            assertEquals(results.get(0), "Raelette");
+        }
+    }
+
+    @Test
+    public void testZimReaderGetArticleContent() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            String normalizedTitle = reader.getNormalizedTitle("A Fool for You");
+            assertEquals(normalizedTitle, "A Fool for You");
+
+            normalizedTitle = reader.getNormalizedTitle("ray charles");
+            assertEquals(normalizedTitle, "Ray Charles");
+
+            String html = reader.getDataForTitle(normalizedTitle).toString("utf-8");
+            assertTrue(html.startsWith("<html>"));
+            assertTrue(html.endsWith("</html>"));
+
+            reader.setLzmaDictSize(2 * 1024 * 1024);
+
+            html = reader.getDataForTitle(normalizedTitle).toString("utf-8");
+            assertTrue(html.startsWith("<html>"));
+            assertTrue(html.endsWith("</html>"));
+        }
+    }
+
+    @Test
+    public void testZimReaderGetMediaContent() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            reader.setLzmaDictSize(2 * 1024 * 1024);
+
+            byte[] bytes = reader.getDataForUrl("I/m/Ray_C._Geor.jpg").toByteArray();
+            assertEquals(bytes[0], (byte) 0xFF);
+            assertEquals(bytes[bytes.length - 1], (byte) 0xD9);
+        }
+    }
+
+    @Test
+    public void testZimReaderGetStreamForEntry() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            for (String url : new String[] {"A/Ray_Charles.html", "A/A_Fool_for_You.html", "-/s/style.css",
+                    "I/m/Ray_C._Geor.jpg"}) {
+                DirectoryEntry entry = reader.getEntryForUrl(url);
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1000];
+                try (InputStream in = reader.getStreamForEntry(entry)) {
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        streamed.write(buffer, 0, count);
+                    }
+                }
+                assertArrayEquals(streamed.toByteArray(), reader.getDataForUrl(url).toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testZimReaderGetMimeType() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            assertEquals(reader.getMimeTypeForEntry(reader.getEntryForUrl("A/Ray_Charles.html")), "text/html");
+            assertEquals(reader.getMimeTypeForEntry(reader.getEntryForUrl("-/s/style.css")), "text/css");
+            assertEquals(reader.getMimeTypeForEntry(reader.getEntryForUrl("I/m/Ray_C._Geor.jpg")), "image/jpeg");
+        }
+    }
+
+    @Test
+    public void testZimReaderGetBlobRegion() throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(100);
+        generator.setRedirectRatio(0);
+        generator.setCompressed(false);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+        ZimFile zimFile = new ZimFile(file.getPath());
+
+        try (ZimReader reader = new ZimReader(zimFile);
+             DirectoryEntries entries = DirectoryEntries.byUrl(zimFile);
+             RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (DirectoryEntry entry : entries) {
+                ZimReader.BlobRegion region = reader.getBlobRegion(entry);
+                byte[] bytes = new byte[(int) region.getLength()];
+                raf.seek(region.getOffset());
+                raf.readFully(bytes);
+                assertArrayEquals(bytes, reader.getDataForUrl(entry.getNamespace() + "/" + entry.getUrl()).toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testZimReaderSplitFile() throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(100);
+        generator.setCompressed(false);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+
+        // Split into parts of odd sizes, the way split(1) names them.
+        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+        int partSize = bytes.length / 3 + 7;
+        String[] suffixes = {"aa", "ab", "ac"};
+        for (int i = 0; i < suffixes.length; i++) {
+            int start = i * partSize;
+            int end = Math.min(bytes.length, start + partSize);
+            try (FileOutputStream out = new FileOutputStream(tempFolder.getRoot() + "/split.zim" + suffixes[i])) {
+                out.write(bytes, start, end - start);
+            }
+        }
+        ZimFile zimFile = new ZimFile(file.getPath());
+        ZimFile splitFile = new ZimFile(tempFolder.getRoot() + "/split.zim");
+        assertTrue(splitFile.isSplit());
+        assertEquals(splitFile.getParts().length, 3);
+        assertEquals(splitFile.length(), bytes.length);
+        assertTrue(splitFile.exists());
+        assertTrue(splitFile.isFile());
+        assertTrue(splitFile.canRead());
+        assertArrayEquals(splitFile.getUuid(), zimFile.getUuid());
+        assertEquals(new ZimFile(tempFolder.getRoot() + "/split.zimaa").length(), bytes.length);
+        new ZimVerifier(splitFile).verify();
+
+        int regionCount = 0;
+        try (ZimReader reader = new ZimReader(zimFile);
+             ZimReader splitReader = new ZimReader(splitFile);
+             DirectoryEntries entries = DirectoryEntries.byUrl(splitFile)) {
+            assertEquals(splitReader.getMainPageTitle(), generator.getTitle(0));
+            for (DirectoryEntry entry : entries) {
+                String url = entry.getNamespace() + "/" + entry.getUrl();
+                byte[] content = reader.getDataForUrl(url).toByteArray();
+                assertArrayEquals(splitReader.getDataForUrl(url).toByteArray(), content);
+
+                ZimReader.BlobRegion region = splitReader.getBlobRegion(entry);
+                if (region == null) {
+                    continue;
+                }
+                regionCount++;
+                try (RandomAccessFile raf = new RandomAccessFile(region.getFile(), "r")) {
+                    byte[] regionBytes = new byte[(int) region.getLength()];
+                    raf.seek(region.getOffset());
+                    raf.readFully(regionBytes);
+                    assertArrayEquals(regionBytes, content);
+                }
+            }
+        }
+        assertTrue(regionCount > 0);
+    }
+
+    @Test
+    public void testZimReaderMetrics() throws Exception {
+        InMemoryZimMetrics metrics = new InMemoryZimMetrics();
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE), new ZimCache(16 * 1024 * 1024))) {
+            reader.setMetrics(metrics);
+            String html = reader.getDataForTitle("Ray Charles").toString("utf-8");
+            assertTrue(html.startsWith("<html>"));
+            assertTrue(metrics.getLookupCount() > 0);
+            assertTrue(metrics.getProbeCount() >= metrics.getLookupCount());
+            assertTrue(metrics.getCacheMissCount(ZimMetrics.CACHE_TITLE_ENTRY) > 0);
+            assertTrue(metrics.getBytesRead() > 0);
+            assertTrue(metrics.getSeekCount() > 0);
+            assertEquals(metrics.getClusterDecodeCount(), 1);
+            assertTrue(metrics.getDecodedBytes() >= html.length());
+            assertTrue(metrics.getCompressedBytes() > 0);
+            assertTrue(metrics.getCompressedBytes() < metrics.getDecodedBytes());
+            assertEquals(metrics.getCacheMissCount(ZimMetrics.CACHE_CLUSTER), 1);
+            assertEquals(metrics.getDecodeLatency().getCount(), 1);
+
+            // The same lookup again finds the entry and the decoded cluster in the cache.
+            reader.getDataForTitle("Ray Charles");
+            assertEquals(metrics.getClusterDecodeCount(), 1);
+            assertEquals(metrics.getCacheHitCount(ZimMetrics.CACHE_CLUSTER), 1);
+            assertTrue(metrics.getCacheHitCount(ZimMetrics.CACHE_TITLE_ENTRY) > 0);
+        }
+    }
+
+    @Test
+    public void testZimReaderWithoutVerifyingChecks() throws Exception {
+        try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE))) {
+            reader.setVerifyChecks(false);
+
+            String html = reader.getDataForTitle("Ray Charles").toString("utf-8");
+            assertTrue(html.startsWith("<html>"));
+            assertTrue(html.endsWith("</html>"));
+
+            byte[] bytes = reader.getDataForUrl("I/m/Ray_C._Geor.jpg").toByteArray();
+            assertEquals(bytes[0], (byte) 0xFF);
+            assertEquals(bytes[bytes.length - 1], (byte) 0xD9);
+        }
+    }
+
+    @Test
+    public void testZimReaderZeroLength() {
+        try {
+            new ZimReader(new ZimFile(RAW_DIR + ZIM_ZERO_BYTES));
+            fail("Should not reach this point.");
+        } catch (IOException e){
+            //
+        }
+    }
+
+    @Test
+    public void testZimReaderMalformedHeader() {
+        try {
+            new ZimReader(new ZimFile(RAW_DIR + ZIM_MALFORMED_HEADER));
+            fail("Should not reach this point.");
+        } catch (IOException e){
+            //
+        }
+    }
+
+    @Test
+    public void testZimReaderCorruptHeader() {
+        try {
+            new ZimReader(new ZimFile(RAW_DIR + ZIM_CORRUPT_HEADER));
+            fail("Should not reach this point.");
+        } catch (IOException e){
+            //
+        }
+    }
+
+    @Test
+    public void testZimReaderNoContentAfterHeader() {
+        try {
+            ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + ZIM_NO_CONTENT_AFTER_HEADER));
+
+            reader.getZimTitle();
+            fail("Should not reach this point.");
+        } catch (IOException e){
+            //
+        }
+    }
+}
\ No newline at end of file
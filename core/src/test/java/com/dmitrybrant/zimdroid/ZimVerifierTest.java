@@ -0,0 +1,108 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ZimVerifierTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testVerifyClusters() throws Exception {
+        new ZimVerifier(new ZimFile(RAW_DIR + TEST_ZIM_FILE)).verifyClusters();
+    }
+
+    @Test
+    public void testVerifyParallel() throws Exception {
+        ZimFile zimFile = new ZimFile(RAW_DIR + TEST_ZIM_FILE);
+        assertTrue(zimFile.getChecksumPos() > 0);
+        final long[] progress = new long[2];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ZimVerifier verifier = new ZimVerifier(zimFile);
+            verifier.setPool(pool);
+            verifier.setProgressListener(new ZimVerifier.ProgressListener() {
+                @Override
+                public void onProgress(long done, long total) {
+                    progress[0] = done;
+                    progress[1] = total;
+                }
+            });
+            verifier.verifyChecksum();
+            assertEquals(progress[0], zimFile.getChecksumPos());
+            verifier.verifyClusters();
+            assertEquals(progress[0], zimFile.getClusterCount());
+            assertEquals(progress[1], zimFile.getClusterCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCorruptFile() throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(100);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+        ZimFile zimFile = new ZimFile(file.getPath());
+        new ZimVerifier(zimFile).verify();
+
+        // Damage the middle of the first cluster.
+        long clusterPos;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(zimFile.getClusterPtrPos());
+            clusterPos = Long.reverseBytes(raf.readLong());
+            raf.seek(clusterPos + 64);
+            int b = raf.read();
+            raf.seek(clusterPos + 64);
+            raf.write(b ^ 0xFF);
+        }
+        try {
+            new ZimVerifier(zimFile).verifyChecksum();
+            fail("Checksum mismatch was not detected.");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            new ZimVerifier(zimFile).verifyClusters();
+            fail("Corrupt cluster was not detected.");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Cluster 0 is corrupt.");
+        }
+    }
+
+    @Test
+    public void testCorruptOffsetTable() throws Exception {
+        ZimGenerator generator = new ZimGenerator();
+        generator.setEntryCount(100);
+        generator.setCompressed(false);
+        File file = tempFolder.newFile("generated.zim");
+        generator.generate(file);
+        ZimFile zimFile = new ZimFile(file.getPath());
+
+        // Claim a huge offset table, which must fail without trying to allocate it.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(zimFile.getClusterPtrPos());
+            long clusterPos = Long.reverseBytes(raf.readLong());
+            raf.seek(clusterPos + 1);
+            raf.writeInt(Integer.reverseBytes(Integer.MAX_VALUE - 3));
+        }
+        try {
+            new ZimVerifier(zimFile).verifyClusters();
+            fail("Corrupt offset table was not detected.");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Cluster 0 is corrupt.");
+        }
+    }
+}
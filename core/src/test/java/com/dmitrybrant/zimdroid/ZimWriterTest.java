@@ -0,0 +1,74 @@
+package com.dmitrybrant.zimdroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ZimWriterTest {
+    private static final int ARTICLE_COUNT = 300;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ZimWriter writer = new ZimWriter();
+        writer.setClusterSize(4 * 1024);
+        writer.setLzmaPreset(0);
+
+        // Add entries out of order, to exercise sorting.
+        byte[] image = new byte[3000];
+        new Random(0).nextBytes(image);
+        writer.addArticle('I', "m/image.jpg", "", "image/jpeg", image);
+        for (int i = ARTICLE_COUNT - 1; i >= 0; i--) {
+            writer.addArticle('A', "Page_" + i, "Page " + i, "text/html", getHtml(i).getBytes("utf-8"));
+        }
+        writer.addRedirect('A', "Alias", "Alias", 'A', "Page_42");
+        writer.addMetadata("Title", "Written");
+        writer.setMainPage('A', "Page_7");
+
+        File file = tempFolder.newFile("written.zim");
+        writer.write(file);
+
+        ZimFile zimFile = new ZimFile(file.getPath());
+        assertEquals(zimFile.getArticleCount(), ARTICLE_COUNT + 3);
+        assertTrue(zimFile.getClusterCount() > 10);
+        new ZimVerifier(zimFile).verifyClusters();
+
+        try (ZimReader reader = new ZimReader(zimFile)) {
+            assertEquals(reader.getZimTitle(), "Written");
+            assertEquals(reader.getMainPageTitle(), "Page 7");
+            assertEquals(reader.getNormalizedTitle("Alias"), "Page 42");
+
+            for (int i = 0; i < ARTICLE_COUNT; i++) {
+                assertEquals(reader.getDataForTitle("Page " + i).toString("utf-8"), getHtml(i));
+            }
+            assertArrayEquals(reader.getDataForUrl("I/m/image.jpg").toByteArray(), image);
+
+            List<String> results = reader.searchByPrefix("Page 29", 3);
+            assertEquals(results.get(0), "Page 29");
+            assertEquals(results.get(1), "Page 290");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingRedirectTarget() throws Exception {
+        ZimWriter writer = new ZimWriter();
+        writer.addRedirect('A', "Alias", "", 'A', "Missing");
+        writer.write(tempFolder.newFile("invalid.zim"));
+    }
+
+    private static String getHtml(int index) {
+        StringBuilder sb = new StringBuilder("<html><body>");
+        for (int i = 0; i < index % 50; i++) {
+            sb.append("<p>Paragraph ").append(i).append(" of page ").append(index).append("</p>");
+        }
+        return sb.append("</body></html>").toString();
+    }
+}
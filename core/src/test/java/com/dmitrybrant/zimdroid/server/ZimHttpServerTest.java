@@ -0,0 +1,268 @@
+package com.dmitrybrant.zimdroid.server;
+
+import com.dmitrybrant.zimdroid.ZimFile;
+import com.dmitrybrant.zimdroid.ZimReader;
+import com.dmitrybrant.zimdroid.ZimWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ZimHttpServerTest {
+    private static final String RAW_DIR = "src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+    private static final Charset ISO_8859_1 = Charset.forName("iso-8859-1");
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final int CONCURRENT_CONNECTIONS = 200;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ZimReader reader;
+    private ZimHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE));
+        server = new ZimHttpServer(reader);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        reader.close();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        byte[] expected = reader.getDataForUrl("A/Ray_Charles.html").toByteArray();
+        HttpURLConnection connection = open("/A/Ray_Charles.html");
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getContentType(), "text/html");
+        assertEquals(connection.getHeaderField("Accept-Ranges"), "bytes");
+        assertArrayEquals(readAll(connection.getInputStream()), expected);
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        connection = open("/A/Ray_Charles.html");
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(connection.getResponseCode(), 304);
+
+        connection = open("/I/m/Ray_C._Geor.jpg");
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getContentType(), "image/jpeg");
+
+        connection = open("/A/No_such_article.html");
+        assertEquals(connection.getResponseCode(), 404);
+
+        connection = open("/");
+        connection.setInstanceFollowRedirects(false);
+        assertEquals(connection.getResponseCode(), 302);
+        assertEquals(connection.getHeaderField("Location"), "/A/index.htm");
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        byte[] expected = reader.getDataForUrl("A/Ray_Charles.html").toByteArray();
+        HttpURLConnection connection = open("/A/Ray_Charles.html");
+        connection.setRequestProperty("Range", "bytes=100-199");
+        assertEquals(connection.getResponseCode(), 206);
+        assertEquals(connection.getHeaderField("Content-Range"), "bytes 100-199/" + expected.length);
+        assertArrayEquals(readAll(connection.getInputStream()), Arrays.copyOfRange(expected, 100, 200));
+
+        connection = open("/A/Ray_Charles.html");
+        connection.setRequestProperty("Range", "bytes=-10");
+        assertEquals(connection.getResponseCode(), 206);
+        assertArrayEquals(readAll(connection.getInputStream()),
+                Arrays.copyOfRange(expected, expected.length - 10, expected.length));
+
+        connection = open("/A/Ray_Charles.html");
+        connection.setRequestProperty("Range", "bytes=" + expected.length + "-");
+        assertEquals(connection.getResponseCode(), 416);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        GzipContentCache cache = new GzipContentCache(1024 * 1024);
+        server.setGzipCache(cache);
+        byte[] expected = reader.getDataForUrl("A/Ray_Charles.html").toByteArray();
+
+        for (int i = 0; i < 2; i++) {
+            HttpURLConnection connection = open("/A/Ray_Charles.html");
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            assertEquals(connection.getResponseCode(), 200);
+            assertEquals(connection.getHeaderField("Content-Encoding"), "gzip");
+            assertEquals(connection.getHeaderField("Vary"), "Accept-Encoding");
+            assertTrue(connection.getContentLength() < expected.length);
+            assertArrayEquals(readAll(new GZIPInputStream(connection.getInputStream())), expected);
+        }
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), 1);
+        assertTrue(cache.getSize() > 0);
+
+        // Clients that don't accept gzip, and media, get unencoded content.
+        HttpURLConnection connection = open("/A/Ray_Charles.html");
+        connection.setRequestProperty("Accept-Encoding", "gzip;q=0, identity");
+        assertNull(connection.getHeaderField("Content-Encoding"));
+        assertArrayEquals(readAll(connection.getInputStream()), expected);
+
+        connection = open("/I/m/Ray_C._Geor.jpg");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertNull(connection.getHeaderField("Content-Encoding"));
+        assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void testGzipTooLargeToCache() throws Exception {
+        GzipContentCache cache = new GzipContentCache(1024);
+        server.setGzipCache(cache);
+        byte[] expected = reader.getDataForUrl("A/Ray_Charles.html").toByteArray();
+
+        for (int i = 0; i < 2; i++) {
+            HttpURLConnection connection = open("/A/Ray_Charles.html");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(connection.getHeaderField("Content-Encoding"), "gzip");
+            assertArrayEquals(readAll(new GZIPInputStream(connection.getInputStream())), expected);
+        }
+        assertEquals(cache.getMissCount(), 2);
+        assertEquals(cache.getSize(), 0);
+    }
+
+    @Test
+    public void testKeepAliveAndPipelining() throws Exception {
+        byte[] css = reader.getDataForUrl("-/s/style.css").toByteArray();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            // Two pipelined requests, then a third on the same connection that closes it.
+            out.write(("GET /-/s/style.css HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "HEAD /-/s/style.css HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(ISO_8859_1));
+            out.flush();
+            out.write("GET /-/s/style.css HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(ISO_8859_1));
+            out.flush();
+
+            byte[] all = readAll(socket.getInputStream());
+            String text = new String(all, ISO_8859_1);
+            String headers = "HTTP/1.1 200 OK\r\n";
+            assertTrue(text.startsWith(headers));
+            int first = text.indexOf("\r\n\r\n") + 4;
+            assertArrayEquals(Arrays.copyOfRange(all, first, first + css.length), css);
+            int second = text.indexOf(headers, first + css.length);
+            assertEquals(second, first + css.length);
+            int third = text.indexOf(headers, second + 1);
+            assertTrue(third > 0);
+            assertTrue(text.indexOf("Connection: close", third) > 0);
+            assertEquals(all.length, text.indexOf("\r\n\r\n", third) + 4 + css.length);
+        }
+    }
+
+    @Test
+    public void testManyConnections() throws Exception {
+        Socket[] sockets = new Socket[CONCURRENT_CONNECTIONS];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            }
+            for (Socket socket : sockets) {
+                socket.getOutputStream().write("GET /I/m/Ray_C._Geor.jpg HTTP/1.0\r\n\r\n".getBytes(ISO_8859_1));
+            }
+            for (Socket socket : sockets) {
+                String response = new String(readAll(socket.getInputStream()), ISO_8859_1);
+                assertTrue(response.startsWith("HTTP/1.0 200 OK\r\n") || response.startsWith("HTTP/1.0 503"));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEncodedPaths() throws Exception {
+        ZimWriter writer = new ZimWriter();
+        writer.addArticle('A', "Caf\u00e9.html", "Caf\u00e9", "text/html", "cafe".getBytes(UTF_8));
+        writer.addArticle('A', "Two \u201cwords\u201d.html", "Two words", "text/html", "words".getBytes(UTF_8));
+        File file = tempFolder.newFile("paths.zim");
+        writer.write(file);
+
+        try (ZimReader pathReader = new ZimReader(new ZimFile(file.getPath()));
+             ZimHttpServer pathServer = new ZimHttpServer(pathReader)) {
+            pathServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = pathServer.getPort();
+            // Percent-encoded space and UTF-8.
+            assertEquals(get(port, "/A/Two%20%E2%80%9Cwords%E2%80%9D.html".getBytes(UTF_8)), "words");
+            assertEquals(get(port, "/A/Caf%C3%A9.html".getBytes(UTF_8)), "cafe");
+            // Raw UTF-8, alone and mixed with percent-encoding.
+            assertEquals(get(port, "/A/Caf\u00e9.html".getBytes(UTF_8)), "cafe");
+            assertEquals(get(port, "/A/Two%20\u201cwords\u201d.html".getBytes(UTF_8)), "words");
+            assertEquals(get(port, "/A/Two%20words.html".getBytes(UTF_8)), null);
+        }
+    }
+
+    @Test
+    public void testBadRequest() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.getOutputStream().write("NONSENSE\r\n\r\n".getBytes(ISO_8859_1));
+            assertTrue(new String(readAll(socket.getInputStream()), ISO_8859_1).startsWith("HTTP/1.1 400"));
+        }
+        HttpURLConnection connection = open("/A/Ray_Charles.html");
+        connection.setRequestMethod("DELETE");
+        assertEquals(connection.getResponseCode(), 405);
+    }
+
+    /**
+     * Send a request with the given raw target.
+     * @return The body of a 200 response, or null for any other response.
+     */
+    private static String get(int port, byte[] target) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("GET ".getBytes(ISO_8859_1));
+            out.write(target);
+            out.write(" HTTP/1.0\r\n\r\n".getBytes(ISO_8859_1));
+            out.flush();
+            String response = new String(readAll(socket.getInputStream()), UTF_8);
+            if (!response.startsWith("HTTP/1.0 200 OK\r\n")) {
+                return null;
+            }
+            return response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(),
+                server.getPort(), path).openConnection();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package org.tukaani.xz;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SeekableMappedInputStreamTest {
+    // Chunks of 64 bytes, so that most reads cross a chunk boundary.
+    private static final int CHUNK_BITS = 6;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadAcrossChunks() throws Exception {
+        byte[] data = new byte[1000];
+        new Random(1).nextBytes(data);
+        try (SeekableMappedInputStream in = new SeekableMappedInputStream(writeFile(data), CHUNK_BITS)) {
+            assertEquals(in.length(), data.length);
+            assertEquals(in.available(), data.length);
+
+            // Byte by byte through all chunks, including the last partial one.
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(in.read(), data[i] & 0xFF);
+            }
+            assertEquals(in.read(), -1);
+            assertEquals(in.read(new byte[10], 0, 10), -1);
+            assertEquals(in.available(), 0);
+
+            Random random = new Random(2);
+            for (int i = 0; i < 500; i++) {
+                int pos = random.nextInt(data.length);
+                byte[] buf = new byte[random.nextInt(300) + 1];
+                in.seek(pos);
+                int count = in.read(buf, 0, buf.length);
+                // Reads are only short at the end of the file.
+                assertEquals(count, Math.min(buf.length, data.length - pos));
+                for (int j = 0; j < count; j++) {
+                    assertEquals(buf[j], data[pos + j]);
+                }
+                assertEquals(in.position(), pos + count);
+            }
+
+            in.seek(data.length + 100);
+            assertEquals(in.read(), -1);
+            assertEquals(in.position(), data.length + 100);
+        }
+    }
+
+    @Test
+    public void testChunkSizedFile() throws Exception {
+        byte[] data = new byte[4 << CHUNK_BITS];
+        new Random(3).nextBytes(data);
+        try (SeekableMappedInputStream in = new SeekableMappedInputStream(writeFile(data), CHUNK_BITS)) {
+            byte[] buf = new byte[data.length];
+            assertEquals(in.read(buf, 0, buf.length), data.length);
+            assertArrayEquals(buf, data);
+            assertEquals(in.read(), -1);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        try (SeekableMappedInputStream in = new SeekableMappedInputStream(writeFile(new byte[0]), CHUNK_BITS)) {
+            assertEquals(in.length(), 0);
+            assertEquals(in.read(), -1);
+        }
+    }
+
+    @Test
+    public void testNegativeSeek() throws Exception {
+        try (SeekableMappedInputStream in = new SeekableMappedInputStream(writeFile(new byte[10]), CHUNK_BITS)) {
+            in.seek(-1);
+            fail();
+        } catch (XZIOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        SeekableMappedInputStream in = new SeekableMappedInputStream(writeFile(new byte[10]), CHUNK_BITS);
+        in.close();
+        try {
+            in.read();
+            fail();
+        } catch (XZIOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testSeekableXZ() throws Exception {
+        // Decoding reads headers and Blocks across many small chunks.
+        byte[] data = XZTestData.generate(50000);
+        File file = writeFile(XZOutputStreamTest.compress(data, 2, 4096));
+        try (SeekableXZInputStream in = new SeekableXZInputStream(new SeekableMappedInputStream(file, CHUNK_BITS))) {
+            assertArrayEquals(XZTestData.readFully(in), data);
+        }
+        try (SeekableXZInputStream in = new SeekableXZInputStream(new SeekableMappedInputStream(file, CHUNK_BITS))) {
+            SeekableXZInputStreamTest.checkRandomReads(in, data, 100);
+        }
+    }
+
+    private File writeFile(byte[] data) throws IOException {
+        File file = tempFolder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,197 @@
+package org.tukaani.xz;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class SeekableXZInputStreamTest {
+    private static final int BLOCK_SIZE = 8 * 1024;
+    private static final int DATA_SIZE = 20 * BLOCK_SIZE + 777;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadAheadSequential() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        byte[] compressed = XZOutputStreamTest.compress(data, 4, BLOCK_SIZE);
+        try (SeekableXZInputStream in = open(compressed)) {
+            in.setReadAhead(executor, 3);
+            assertArrayEquals(XZTestData.readFully(in), data);
+        }
+    }
+
+    @Test
+    public void testReadAheadRandomSeeks() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        byte[] compressed = XZOutputStreamTest.compress(data, 4, BLOCK_SIZE);
+        try (SeekableXZInputStream in = open(compressed)) {
+            in.setReadAhead(executor, 3);
+            checkRandomReads(in, data, 200);
+
+            // Reconfiguring and disabling in the middle of reading doesn't lose data.
+            in.seek(BLOCK_SIZE / 2);
+            byte[] buf = new byte[3 * BLOCK_SIZE];
+            readFully(in, buf);
+            in.setReadAhead(executor, 1);
+            readFully(in, buf);
+            in.setReadAhead(null, 0);
+            readFully(in, buf);
+            assertEquals(in.position(), BLOCK_SIZE / 2 + 9 * BLOCK_SIZE);
+            assertArrayEquals(buf, copyOf(data, BLOCK_SIZE / 2 + 6 * BLOCK_SIZE, buf.length));
+        }
+    }
+
+    @Test
+    public void testReadAheadClosedWhilePending() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        SeekableXZInputStream in = open(XZOutputStreamTest.compress(data, 4, BLOCK_SIZE));
+        in.setReadAhead(executor, 8);
+        byte[] buf = new byte[BLOCK_SIZE + 1];
+        readFully(in, buf);
+        in.close();
+        try {
+            in.read();
+            fail();
+        } catch (XZIOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testMultipleStreams() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        byte[] compressed = compressStreams(data);
+        assertArrayEquals(XZTestData.decompress(compressed), data);
+        try (SeekableXZInputStream in = open(compressed)) {
+            assertEquals(in.getStreamCount(), 5);
+            assertEquals(in.length(), DATA_SIZE);
+            // The Blocks of all Streams are numbered in order.
+            for (int i = 0; i < in.getBlockCount(); i++) {
+                assertEquals(in.getBlockNumber(in.getBlockPos(i)), i);
+                assertEquals(in.getBlockNumber(in.getBlockPos(i) + in.getBlockSize(i) - 1), i);
+            }
+            checkRandomReads(in, data, 200);
+        }
+    }
+
+    @Test
+    public void testBlockCache() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        byte[] compressed = compressStreams(data);
+        try (SeekableXZInputStream in = open(compressed)) {
+            in.setBlockCacheSize(4 * BLOCK_SIZE);
+            checkRandomReads(in, data, 300);
+            // Reading the same Block over and over hits the cache.
+            for (int i = 0; i < 10; i++) {
+                byte[] buf = new byte[100];
+                in.seek(BLOCK_SIZE + i);
+                readFully(in, buf);
+                assertArrayEquals(buf, copyOf(data, BLOCK_SIZE + i, buf.length));
+            }
+            // A cache smaller than a Block caches nothing, and still reads correctly.
+            in.setBlockCacheSize(BLOCK_SIZE / 2);
+            checkRandomReads(in, data, 50);
+            in.setBlockCacheSize(0);
+            checkRandomReads(in, data, 50);
+        }
+    }
+
+    @Test
+    public void testBlockCacheWithReadAhead() throws Exception {
+        byte[] data = XZTestData.generate(DATA_SIZE);
+        try (SeekableXZInputStream in = open(compressStreams(data))) {
+            in.setBlockCacheSize(4 * BLOCK_SIZE);
+            in.setReadAhead(executor, 3);
+            checkRandomReads(in, data, 300);
+            in.seek(0);
+            byte[] buf = new byte[DATA_SIZE];
+            readFully(in, buf);
+            assertArrayEquals(buf, data);
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        byte[] compressed = XZOutputStreamTest.compress(new byte[0], 1, BLOCK_SIZE);
+        try (SeekableXZInputStream in = open(compressed)) {
+            assertEquals(in.getStreamCount(), 1);
+            assertEquals(in.getBlockCount(), 0);
+            assertEquals(in.read(), -1);
+            assertEquals(in.read(new byte[10], 0, 10), -1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeReadAhead() throws Exception {
+        try (SeekableXZInputStream in = open(XZOutputStreamTest.compress(new byte[1], 1, BLOCK_SIZE))) {
+            in.setReadAhead(executor, -1);
+        }
+    }
+
+    /**
+     * Compress the data into several concatenated Streams of a few Blocks each, with an empty
+     * Stream and Stream Padding in between.
+     */
+    private static byte[] compressStreams(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] ends = {5 * BLOCK_SIZE + 100, 6 * BLOCK_SIZE, 12 * BLOCK_SIZE + 1, data.length};
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            byte[] part = copyOf(data, start, ends[i] - start);
+            out.write(XZOutputStreamTest.compress(part, 2, BLOCK_SIZE));
+            if (i == 1) {
+                out.write(XZOutputStreamTest.compress(new byte[0], 1, BLOCK_SIZE));
+                out.write(new byte[8]);
+            }
+            start = ends[i];
+        }
+        return out.toByteArray();
+    }
+
+    static SeekableXZInputStream open(byte[] compressed) throws IOException {
+        return new SeekableXZInputStream(new XZTestData.SeekableByteArrayInputStream(compressed));
+    }
+
+    /**
+     * Read at random positions, including across Block boundaries, and compare with the data.
+     */
+    static void checkRandomReads(SeekableInputStream in, byte[] data, int count) throws IOException {
+        Random random = new Random(count);
+        for (int i = 0; i < count; i++) {
+            int pos = random.nextInt(data.length);
+            byte[] buf = new byte[Math.min(data.length - pos, random.nextInt(2 * BLOCK_SIZE) + 1)];
+            in.seek(pos);
+            readFully(in, buf);
+            assertArrayEquals(buf, copyOf(data, pos, buf.length));
+        }
+        in.seek(data.length);
+        assertEquals(in.read(), -1);
+    }
+
+    static void readFully(SeekableInputStream in, byte[] buf) throws IOException {
+        int off = 0;
+        while (off < buf.length) {
+            int count = in.read(buf, off, buf.length - off);
+            assertTrue(count > 0);
+            off += count;
+        }
+    }
+
+    private static byte[] copyOf(byte[] data, int pos, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, pos, copy, 0, length);
+        return copy;
+    }
+}
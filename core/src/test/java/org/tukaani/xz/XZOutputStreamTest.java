@@ -0,0 +1,93 @@
+package org.tukaani.xz;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class XZOutputStreamTest {
+    private static final int THREADS = 4;
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    @Test
+    public void testParallelRoundTrip() throws Exception {
+        byte[] data = XZTestData.generate(10 * BLOCK_SIZE + 123);
+        byte[] compressed = compress(data, THREADS, BLOCK_SIZE);
+        assertArrayEquals(XZTestData.decompress(compressed), data);
+
+        try (SeekableXZInputStream in = new SeekableXZInputStream(
+                new XZTestData.SeekableByteArrayInputStream(compressed))) {
+            assertEquals(in.getStreamCount(), 1);
+            assertEquals(in.getBlockCount(), 11);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(in.getBlockSize(i), BLOCK_SIZE);
+            }
+            assertEquals(in.getBlockSize(10), 123);
+        }
+    }
+
+    @Test
+    public void testParallelEndBlockAndFlush() throws Exception {
+        byte[] data = XZTestData.generate(5 * BLOCK_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XZOutputStream xz = new XZOutputStream(out, new LZMA2Options(1), XZ.CHECK_CRC64, THREADS, BLOCK_SIZE)) {
+            // Blocks end early at endBlock(), and flush() waits for everything written so far.
+            xz.write(data, 0, 1000);
+            xz.endBlock();
+            xz.write(data, 1000, 3 * BLOCK_SIZE);
+            xz.flush();
+            xz.write(data, 1000 + 3 * BLOCK_SIZE, data.length - 1000 - 3 * BLOCK_SIZE);
+        }
+        assertArrayEquals(XZTestData.decompress(out.toByteArray()), data);
+    }
+
+    @Test
+    public void testParallelEmpty() throws Exception {
+        byte[] compressed = compress(new byte[0], THREADS, BLOCK_SIZE);
+        assertArrayEquals(XZTestData.decompress(compressed), new byte[0]);
+        try (SeekableXZInputStream in = new SeekableXZInputStream(
+                new XZTestData.SeekableByteArrayInputStream(compressed))) {
+            assertEquals(in.getBlockCount(), 0);
+            assertEquals(in.length(), 0);
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSingleThreaded() throws Exception {
+        // Blocks are compressed independently either way, so the output is the same.
+        byte[] data = XZTestData.generate(3 * BLOCK_SIZE + 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XZOutputStream xz = new XZOutputStream(out, new LZMA2Options(1), XZ.CHECK_CRC64)) {
+            for (int off = 0; off < data.length; off += BLOCK_SIZE) {
+                xz.write(data, off, Math.min(BLOCK_SIZE, data.length - off));
+                xz.endBlock();
+            }
+        }
+        byte[] single = out.toByteArray();
+        byte[] parallel = compress(data, THREADS, BLOCK_SIZE);
+        assertArrayEquals(parallel, single);
+    }
+
+    @Test(expected = UnsupportedOptionsException.class)
+    public void testInvalidThreadCount() throws Exception {
+        new XZOutputStream(new ByteArrayOutputStream(), new LZMA2Options(1), XZ.CHECK_CRC64, 0, BLOCK_SIZE);
+    }
+
+    static byte[] compress(byte[] data, int threads, int blockSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XZOutputStream xz = new XZOutputStream(out, new LZMA2Options(1), XZ.CHECK_CRC64, threads, blockSize)) {
+            // Odd-sized writes, so that Blocks are split in the middle of a write.
+            Random random = new Random(data.length);
+            int off = 0;
+            while (off < data.length) {
+                int len = Math.min(data.length - off, random.nextInt(5000) + 1);
+                xz.write(data, off, len);
+                off += len;
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+package org.tukaani.xz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Helpers for the tests of the XZ classes.
+ */
+final class XZTestData {
+    private static final String[] WORDS = {
+            "ray", "charles", "piano", "soul", "georgia", "on", "my", "mind", "the", "of", "and", "blues"
+    };
+
+    private XZTestData() {
+    }
+
+    /**
+     * @return Text made of random words, which compresses reasonably but not trivially.
+     */
+    static byte[] generate(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        int pos = 0;
+        while (pos < length) {
+            String word = WORDS[random.nextInt(WORDS.length)] + (random.nextInt(10) == 0 ? random.nextInt(1000) : "") + " ";
+            for (int i = 0; i < word.length() && pos < length; i++) {
+                data[pos++] = (byte) word.charAt(i);
+            }
+        }
+        return data;
+    }
+
+    static byte[] decompress(byte[] compressed) throws IOException {
+        return readFully(new XZInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int count;
+        while ((count = in.read(buf)) > 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    static final class SeekableByteArrayInputStream extends SeekableInputStream {
+        private final byte[] data;
+        private int pos;
+
+        SeekableByteArrayInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= data.length) {
+                return -1;
+            }
+            len = Math.min(len, data.length - pos);
+            System.arraycopy(data, pos, buf, off, len);
+            pos += len;
+            return len;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public long position() {
+            return pos;
+        }
+
+        @Override
+        public void seek(long pos) {
+            this.pos = (int) Math.min(pos, data.length);
+        }
+    }
+}
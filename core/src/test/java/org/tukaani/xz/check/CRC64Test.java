@@ -0,0 +1,61 @@
+package org.tukaani.xz.check;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CRC64Test {
+    private static final long POLY = 0xC96C5795D7870F42L;
+
+    @Test
+    public void testCheckValue() {
+        CRC64 crc = new CRC64();
+        crc.update("123456789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(toLong(crc.finish()), 0x995dc9bbdf1939faL);
+
+        // finish() starts over.
+        assertEquals(toLong(crc.finish()), 0L);
+    }
+
+    @Test
+    public void testMatchesBytewise() {
+        Random random = new Random(1);
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        // Every alignment and tail length of the eight byte loop, in one or more updates.
+        for (int off = 0; off < 9; off++) {
+            for (int len = 0; len < 40; len++) {
+                CRC64 crc = new CRC64();
+                crc.update(data, off, len);
+                assertEquals(toLong(crc.finish()), bytewise(data, off, len));
+            }
+        }
+        CRC64 crc = new CRC64();
+        crc.update(data, 0, 13);
+        crc.update(data, 13, 500);
+        crc.update(data, 513, data.length - 513);
+        assertEquals(toLong(crc.finish()), bytewise(data, 0, data.length));
+    }
+
+    private static long bytewise(byte[] buf, int off, int len) {
+        long crc = -1;
+        for (int i = off; i < off + len; i++) {
+            crc ^= buf[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+        }
+        return ~crc;
+    }
+
+    private static long toLong(byte[] buf) {
+        long value = 0;
+        for (int i = buf.length - 1; i >= 0; i--) {
+            value = (value << 8) | (buf[i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package com.dmitrybrant.zimdroid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(CacheEvictionEvent.NAME)
+@Label("ZIM Cache Eviction")
+@Category("ZIM")
+@Description("An item evicted from a shared ZIM cache to make room for another")
+@StackTrace(false)
+class CacheEvictionEvent extends jdk.jfr.Event {
+    static final String NAME = "com.dmitrybrant.zimdroid.CacheEviction";
+
+    @Label("Cache")
+    @Description("Either \"url entry\", \"title entry\" or \"cluster\"")
+    String cache;
+
+    @Label("Size")
+    @Description("Estimated size of the item")
+    @DataAmount
+    long size;
+}
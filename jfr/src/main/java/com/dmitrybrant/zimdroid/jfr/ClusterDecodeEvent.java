@@ -0,0 +1,37 @@
+package com.dmitrybrant.zimdroid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name(ClusterDecodeEvent.NAME)
+@Label("ZIM Cluster Decode")
+@Category("ZIM")
+@Description("Decoding of a compressed cluster of a ZIM file")
+class ClusterDecodeEvent extends jdk.jfr.Event {
+    static final String NAME = "com.dmitrybrant.zimdroid.ClusterDecode";
+
+    @Label("Cluster Number")
+    int clusterNumber;
+
+    @Label("Compression Type")
+    @Description("Compression byte of the cluster, e.g. 4 for XZ")
+    int compressionType;
+
+    @Label("Compressed Size")
+    @Description("Size of the cluster in the file")
+    @DataAmount
+    long compressedSize;
+
+    @Label("Uncompressed Size")
+    @Description("Number of bytes decoded, which may be less than the whole cluster")
+    @DataAmount
+    long uncompressedSize;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long decodeTime;
+}
@@ -0,0 +1,106 @@
+package com.dmitrybrant.zimdroid.jfr;
+
+import com.dmitrybrant.zimdroid.ZimMetrics;
+
+/**
+ * Emits Java Flight Recorder events for lookups, cluster decodes and cache evictions, so that
+ * a slow page load can be attributed to a specific lookup or cluster in JDK Mission Control.
+ * The events are in the "ZIM" category, and are disabled unless a recording enables them,
+ * e.g. with a .jfc file that sets com.dmitrybrant.zimdroid.Lookup, ClusterDecode and
+ * CacheEviction to enabled. While they're disabled, this costs next to nothing.
+ *
+ * Events are committed when the measured operation has finished, so their own duration is
+ * zero, and the time taken is in a field of the event. Decodes are recorded with their stack
+ * trace, which leads to the code that needed the cluster.
+ *
+ * Install on a reader with {@link com.dmitrybrant.zimdroid.ZimReader#setMetrics(ZimMetrics)},
+ * or on all readers of a library with
+ * {@link com.dmitrybrant.zimdroid.ZimLibrary#setMetrics(ZimMetrics)}.
+ */
+public class JfrZimMetrics implements ZimMetrics {
+    private static final String[] LIST_NAMES = {"url", "title"};
+    private static final String[] CACHE_NAMES = {"url entry", "title entry", "cluster"};
+
+    private final ZimMetrics next;
+
+    public JfrZimMetrics() {
+        this(ZimMetrics.NONE);
+    }
+
+    /**
+     * @param next Receives all measurements as well, e.g. an
+     *             {@link com.dmitrybrant.zimdroid.InMemoryZimMetrics}.
+     */
+    public JfrZimMetrics(ZimMetrics next) {
+        this.next = next;
+    }
+
+    @Override
+    public void onCacheHit(int cache) {
+        next.onCacheHit(cache);
+    }
+
+    @Override
+    public void onCacheMiss(int cache) {
+        next.onCacheMiss(cache);
+    }
+
+    @Override
+    public void onCacheEviction(int cache, long size) {
+        CacheEvictionEvent event = new CacheEvictionEvent();
+        if (event.isEnabled()) {
+            event.cache = CACHE_NAMES[cache];
+            event.size = size;
+            event.commit();
+        }
+        next.onCacheEviction(cache, size);
+    }
+
+    @Override
+    public void onLookup(int list, String key, int probes, long nanos) {
+        LookupEvent event = new LookupEvent();
+        if (event.isEnabled()) {
+            event.list = LIST_NAMES[list];
+            event.key = key;
+            event.probes = probes;
+            event.lookupTime = nanos;
+            event.commit();
+        }
+        next.onLookup(list, key, probes, nanos);
+    }
+
+    @Override
+    public void onFileRead(long bytes) {
+        next.onFileRead(bytes);
+    }
+
+    @Override
+    public void onSeek() {
+        next.onSeek();
+    }
+
+    @Override
+    public void onClusterDecoded(int clusterNumber, int compressionType, long compressedBytes,
+                                 long bytes, long nanos) {
+        ClusterDecodeEvent event = new ClusterDecodeEvent();
+        if (event.isEnabled()) {
+            event.clusterNumber = clusterNumber;
+            event.compressionType = compressionType;
+            event.compressedSize = compressedBytes;
+            event.uncompressedSize = bytes;
+            event.decodeTime = nanos;
+            event.commit();
+        }
+        next.onClusterDecoded(clusterNumber, compressionType, compressedBytes, bytes, nanos);
+    }
+
+    @Override
+    public void onBlobSkip(long bytes) {
+        next.onBlobSkip(bytes);
+    }
+
+    @Override
+    public void onRedirect(int hops) {
+        next.onRedirect(hops);
+    }
+}
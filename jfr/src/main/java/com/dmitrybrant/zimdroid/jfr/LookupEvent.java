@@ -0,0 +1,33 @@
+package com.dmitrybrant.zimdroid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name(LookupEvent.NAME)
+@Label("ZIM Lookup")
+@Category("ZIM")
+@Description("Binary search of the URL or title list of a ZIM file")
+@StackTrace(false)
+class LookupEvent extends jdk.jfr.Event {
+    static final String NAME = "com.dmitrybrant.zimdroid.Lookup";
+
+    @Label("List")
+    @Description("Either \"url\" or \"title\"")
+    String list;
+
+    @Label("Key")
+    @Description("The URL or title searched for")
+    String key;
+
+    @Label("Probes")
+    @Description("Number of directory entries looked at")
+    int probes;
+
+    @Label("Lookup Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long lookupTime;
+}
@@ -0,0 +1,85 @@
+package com.dmitrybrant.zimdroid.jfr;
+
+import com.dmitrybrant.zimdroid.InMemoryZimMetrics;
+import com.dmitrybrant.zimdroid.ZimCache;
+import com.dmitrybrant.zimdroid.ZimFile;
+import com.dmitrybrant.zimdroid.ZimReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.Assert.*;
+
+public class JfrZimMetricsTest {
+    private static final String RAW_DIR = "../core/src/test/res/raw/";
+    private static final String TEST_ZIM_FILE = "wikipedia_en_ray_charles_2015-06.zim";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testEvents() throws Exception {
+        InMemoryZimMetrics metrics = new InMemoryZimMetrics();
+        Path recordingFile = tempFolder.newFile("zim.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(LookupEvent.NAME);
+            recording.enable(ClusterDecodeEvent.NAME);
+            recording.enable(CacheEvictionEvent.NAME);
+            recording.start();
+            // Small enough for directory entries to be evicted.
+            ZimCache cache = new ZimCache(1024);
+            cache.setMetrics(new JfrZimMetrics());
+            try (ZimReader reader = new ZimReader(new ZimFile(RAW_DIR + TEST_ZIM_FILE), cache)) {
+                reader.setMetrics(new JfrZimMetrics(metrics));
+                assertTrue(reader.getDataForTitle("Ray Charles").size() > 0);
+                reader.getDataForUrl("Ray_Charles.html");
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> lookups = new ArrayList<>();
+        List<RecordedEvent> decodes = new ArrayList<>();
+        int evictionCount = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            String name = event.getEventType().getName();
+            if (name.equals(LookupEvent.NAME)) {
+                lookups.add(event);
+            } else if (name.equals(ClusterDecodeEvent.NAME)) {
+                decodes.add(event);
+            } else if (name.equals(CacheEvictionEvent.NAME)) {
+                evictionCount++;
+            }
+        }
+
+        // Events are passed on to the next metrics as well.
+        assertEquals(lookups.size(), metrics.getLookupCount());
+        assertEquals(decodes.size(), metrics.getClusterDecodeCount());
+
+        boolean foundTitle = false;
+        for (RecordedEvent event : lookups) {
+            assertTrue(event.getInt("probes") > 0);
+            if (event.getString("list").equals("title") && event.getString("key").equals("Ray Charles")) {
+                foundTitle = true;
+            }
+        }
+        assertTrue(foundTitle);
+
+        assertTrue(decodes.size() > 0);
+        RecordedEvent decode = decodes.get(0);
+        assertEquals(decode.getInt("compressionType"), 4);
+        assertTrue(decode.getLong("compressedSize") > 0);
+        assertTrue(decode.getLong("uncompressedSize") > decode.getLong("compressedSize"));
+        assertTrue(decode.getDuration("decodeTime").toNanos() > 0);
+        assertTrue(evictionCount > 0);
+    }
+}
@@ -2,29 +2,78 @@ package com.dmitrybrant.zimdroid;
 
 import android.content.ContentProvider;
 import android.content.ContentValues;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
 import android.os.ParcelFileDescriptor.AutoCloseOutputStream;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 import android.webkit.MimeTypeMap;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class ZimContentProvider extends ContentProvider {
     private static final String TAG = "ZimContentProvider";
+    private static final int TRANSFER_THREADS = 8;
+    private static final int MAX_TRANSFER_THREADS = 64;
+    private static final long TRANSFER_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int TRANSFER_BUFFER_SIZE = 16 * 1024;
+    private static final int ENTRY_CACHE_SIZE = 64;
+
+    private ExecutorService transferExecutor;
+
+    // Recently requested entries, so that getType() and the following openFile() or
+    // openAssetFile() for the same URL look the entry up only once.
+    private final LruCache<String, DirectoryEntry> entryCache = new LruCache<>(ENTRY_CACHE_SIZE);
+    private ZimReader entryCacheReader;
 
     protected abstract Uri getContentUri();
 
     protected abstract ByteArrayOutputStream getDataForUrl(String url) throws IOException;
 
+    /**
+     * Override this to let the provider look up entries itself, so that content can be streamed
+     * into the pipe as it is decoded, and uncompressed content can be served straight from the
+     * file. Otherwise, content is retrieved with {@link #getDataForUrl(String)}.
+     * @return The reader for the ZIM file being served, or null.
+     */
+    protected ZimReader getZimReader() {
+        return null;
+    }
+
+    /**
+     * If a reader is available, this is the MIME type recorded in the entry's directory entry,
+     * which doesn't require decoding any content. Otherwise, or if the entry has no valid MIME
+     * type, the type is guessed from the extension of the URL.
+     */
     @Override
     public String getType(Uri uri) {
+        ZimReader reader = getZimReader();
+        if (reader != null) {
+            try {
+                DirectoryEntry entry = getEntryForUrl(reader, getFilePath(uri));
+                String mimeType = entry != null ? reader.getMimeTypeForEntry(entry) : null;
+                if (!TextUtils.isEmpty(mimeType)) {
+                    return mimeType;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to look up MIME type for " + uri.toString());
+            }
+        }
         String extension = MimeTypeMap.getFileExtensionFromUrl(uri.toString().toLowerCase(Locale.ROOT));
         String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
         if (TextUtils.isEmpty(mimeType)) {
@@ -35,16 +84,34 @@ public abstract class ZimContentProvider extends ContentProvider {
 
     @Override
     public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String url = getFilePath(uri);
+        Log.d(TAG, "Retrieving " + url);
         ParcelFileDescriptor[] pipe;
         try {
+            ZimReader reader = getZimReader();
+            DirectoryEntry entry = null;
+            ByteArrayOutputStream data = null;
+            if (reader != null) {
+                entry = getEntryForUrl(reader, url);
+                if (entry == null) {
+                    throw new FileNotFoundException("No entry for: " + uri.toString());
+                }
+            } else {
+                // Content from the subclass is retrieved up front, so that its errors are reported here.
+                data = getDataForUrl(url);
+            }
             pipe = ParcelFileDescriptor.createPipe();
+            // Return the read end right away, and decode into the write end on a worker thread.
+            try {
+                getTransferExecutor().execute(new Transfer(reader, entry, data, new AutoCloseOutputStream(pipe[1])));
+            } catch (RejectedExecutionException e) {
+                pipe[0].close();
+                pipe[1].close();
+                throw new FileNotFoundException("Too many transfers to open: " + uri.toString());
+            }
 
-            String url = getFilePath(uri);
-            Log.d(TAG, "Retrieving " + url);
-            ByteArrayOutputStream stream = getDataForUrl(url);
-
-            new TransferThread(stream, new AutoCloseOutputStream(pipe[1])).start();
-
+        } catch (FileNotFoundException e) {
+            throw e;
         } catch (IOException e) {
             e.printStackTrace();
             throw new FileNotFoundException("Could not open pipe for: " + uri.toString());
@@ -52,6 +119,35 @@ public abstract class ZimContentProvider extends ContentProvider {
         return (pipe[0]);
     }
 
+    /**
+     * Content that is stored uncompressed is served as a descriptor for its region of the ZIM
+     * file, which needs no copying at all. Everything else goes through {@link #openFile}.
+     */
+    @Override
+    public AssetFileDescriptor openAssetFile(Uri uri, String mode) throws FileNotFoundException {
+        ZimReader reader = getZimReader();
+        if (reader != null) {
+            try {
+                DirectoryEntry entry = getEntryForUrl(reader, getFilePath(uri));
+                if (entry == null) {
+                    throw new FileNotFoundException("No entry for: " + uri.toString());
+                }
+                ZimReader.BlobRegion region = reader.getBlobRegion(entry);
+                if (region != null) {
+                    ParcelFileDescriptor fd = ParcelFileDescriptor.open(region.getFile(),
+                            ParcelFileDescriptor.MODE_READ_ONLY);
+                    return new AssetFileDescriptor(fd, region.getOffset(), region.getLength());
+                }
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new FileNotFoundException("Could not open: " + uri.toString());
+            }
+        }
+        return new AssetFileDescriptor(openFile(uri, mode), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
     @Override
     public boolean onCreate() {
         return true;
@@ -92,19 +188,82 @@ public abstract class ZimContentProvider extends ContentProvider {
         return filePath;
     }
 
-    private static class TransferThread extends Thread {
-        private final ByteArrayOutputStream in;
+    private DirectoryEntry getEntryForUrl(ZimReader reader, String url) throws IOException {
+        synchronized (entryCache) {
+            if (reader != entryCacheReader) {
+                // A different file is being served now.
+                entryCache.evictAll();
+                entryCacheReader = reader;
+            }
+            DirectoryEntry entry = entryCache.get(url);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        DirectoryEntry entry = reader.getEntryForUrl(url);
+        synchronized (entryCache) {
+            if (entry != null && reader == entryCacheReader) {
+                entryCache.put(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Transfers run on a pool of threads, which are let go when the provider is idle, so that a
+     * page with many resources doesn't start a thread for each one. A transfer holds its thread
+     * until the client has read all but the last pipe buffer of the content, and a client may
+     * never read it at all, so transfers aren't queued behind stalled ones: the pool keeps about
+     * as many threads as a WebView fetches resources at once, and starts more as needed, up to
+     * a limit beyond which requests fail.
+     */
+    private synchronized ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(TRANSFER_THREADS, MAX_TRANSFER_THREADS,
+                    TRANSFER_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, TAG + " transfer " + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            transferExecutor = executor;
+        }
+        return transferExecutor;
+    }
+
+    private class Transfer implements Runnable {
+        private final ZimReader reader;
+        private final DirectoryEntry entry;
+        private final ByteArrayOutputStream data;
         private final OutputStream out;
 
-        TransferThread(ByteArrayOutputStream in, OutputStream out) throws IOException {
-            this.in = in;
+        Transfer(ZimReader reader, DirectoryEntry entry, ByteArrayOutputStream data, OutputStream out) {
+            this.reader = reader;
+            this.entry = entry;
+            this.data = data;
             this.out = out;
         }
 
         @Override
         public void run() {
             try {
-                out.write(in.toByteArray());
+                if (reader != null) {
+                    byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+                    try (InputStream in = reader.getStreamForEntry(entry)) {
+                        int count;
+                        while ((count = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                        }
+                    }
+                } else {
+                    data.writeTo(out);
+                }
                 out.flush();
             } catch (IOException | NullPointerException e) {
                 // ignore